@@ -0,0 +1,42 @@
+package Benchmarks;
+
+import Compiler.Parser.Builder.ASTBuilder;
+import Compiler.Parser.Matcher.State;
+import Compiler.Parser.ParserTree.ParserTreeNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures ASTBuilder.build: reading the parse tree off the forest of a file that
+ * has already been parsed.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@org.openjdk.jmh.annotations.State(Scope.Benchmark)
+public class ASTBuilderBenchmark {
+
+    private State parsed;
+
+    @Setup(Level.Trial)
+    public void parse(Corpus corpus){parsed = corpus.parse();}
+
+    @Benchmark
+    public ArrayList<ParserTreeNode> build(){
+        return new ASTBuilder().build(parsed);
+    }
+
+}
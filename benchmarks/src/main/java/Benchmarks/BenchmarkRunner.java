@@ -0,0 +1,26 @@
+package Benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the gc profiler, so allocation rates are reported alongside
+ * the times. Takes the usual JMH options, e.g. a regex of the benchmarks to run:
+ * <br><i>java -jar benchmarks/target/benchmarks.jar Scanner -p language=java</i>
+ */
+public final class BenchmarkRunner {
+
+    private BenchmarkRunner(){}
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        new Runner(new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+
+}
@@ -0,0 +1,133 @@
+package Benchmarks;
+
+import Compiler.Nodes.ASTNodeTypeBantam;
+import Compiler.Nodes.ASTNodeTypeJava7;
+import Compiler.Parser.Builder.ASTBuilder;
+import Compiler.Parser.Builder.Builder;
+import Compiler.Parser.CFG.ContextFreeGrammar;
+import Compiler.Parser.LanguageSource.BantamGrammarSource;
+import Compiler.Parser.LanguageSource.JavaGrammar;
+import Compiler.Parser.Matcher.Chart;
+import Compiler.Parser.Matcher.State;
+import Compiler.Parser.ParserTree.ParserTreeNode;
+import Compiler.Scanner.LexerToken;
+import Compiler.Scanner.Scanner;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+/**
+ * This class is designed to provide the input of the benchmarks: a small, a medium and
+ * a large source file in each of the languages the editor parses, along with the
+ * grammar and node types of the language. The products of the earlier stages are
+ * prepared once per trial, so each benchmark only measures its own stage.
+ */
+@org.openjdk.jmh.annotations.State(Scope.Benchmark)
+public class Corpus {
+
+    @Param({"java", "bantam"})
+    public String language;
+
+    @Param({"small", "medium", "large"})
+    public String size;
+
+    String text;
+    ContextFreeGrammar grammar;
+    Class nodeType;
+    LexerToken[] tokens;
+
+    /** Loads the source file and picks the grammar of the language **/
+    @Setup(Level.Trial)
+    public void load() throws IOException {
+        boolean java = language.equals("java");
+        text = read("corpus/" + size + (java ? ".java" : ".btm"));
+        grammar = java ? JavaGrammar.getJavaGrammar() : BantamGrammarSource.getBantamGrammar();
+        nodeType = java ? ASTNodeTypeJava7.class : ASTNodeTypeBantam.class;
+        tokens = scan(text);
+    }
+
+    /** Returns the tokens of a text, without whitespace or comments
+     * @param text the text to scan
+     * @return the tokens of the text
+     */
+    static LexerToken[] scan(String text){
+        Scanner scanner = new Scanner(text);
+        ArrayList<LexerToken> tokens = new ArrayList<>();
+        LexerToken token;
+        while ((token = scanner.getNextToken()).getIds() != LexerToken.TokenIds.EOF)
+            tokens.add(token);
+        return tokens.toArray(new LexerToken[tokens.size()]);
+    }
+
+    /** Parses the tokens and returns the completed start state the Matcher hands to
+     * its Builder, so building can be measured apart from parsing
+     * @return the completed state of the derivation
+     */
+    State parse(){
+        FinalState finalState = new FinalState();
+        grammar.matches(tokens, finalState);
+        if (finalState.state == null)
+            throw new RuntimeException("Corpus file " + size + " does not parse as " + language);
+        return finalState.state;
+    }
+
+    /** Parses the tokens and returns the head of the first derivation tree
+     * @return the head of the parse tree
+     */
+    ParserTreeNode parseTree(){
+        ASTBuilder builder = new ASTBuilder();
+        grammar.matches(tokens, builder);
+        if (builder.getTreeHead() == null)
+            throw new RuntimeException("Corpus file " + size + " does not parse as " + language);
+        return builder.getTreeHead();
+    }
+
+    /** Reads a file of the corpus
+     * @param name the name of the file, relative to this class
+     * @return the text of the file
+     * @throws IOException if the file cannot be read
+     */
+    private static String read(String name) throws IOException {
+        try (InputStream in = Corpus.class.getResourceAsStream(name)){
+            if (in == null) throw new IOException("Missing corpus file " + name);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] chunk = new byte[8192];
+            int read;
+            while ((read = in.read(chunk)) != -1) bytes.write(chunk, 0, read);
+            return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /** Counts the tokens a benchmark went through, so time is also reported per token **/
+    @org.openjdk.jmh.annotations.State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Tokens {
+        public long tokens;
+
+        @Setup(Level.Iteration)
+        public void clear(){tokens = 0;}
+    }
+
+    /** A Builder that keeps the state it is given instead of building a tree **/
+    private static final class FinalState implements Builder {
+        private State state = null;
+
+        @Override public Object build(State inputState){
+            state = inputState;
+            return null;
+        }
+
+        @Override public Object build(Chart chart){throw new BuildMethodNotImplemented();}
+
+        @Override public ParserTreeNode getTreeHead(){return null;}
+    }
+
+}
@@ -0,0 +1,42 @@
+package Benchmarks;
+
+import Compiler.Parser.Builder.ASTBuilder;
+import Compiler.SemanticAnalyzer.ClassTree.ClassTree;
+import Compiler.SemanticAnalyzer.ClassTreeDecorator;
+import Compiler.SemanticAnalyzer.RawSyntaxTree;
+import Compiler.Visitor.VisitorToken;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the whole pipeline the editor runs on a file: scanning, parsing, building
+ * the RawSyntaxTree and decorating a ClassTree with ClassTreeDecorator.decorate.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DecoratorBenchmark {
+
+    @Benchmark
+    public ArrayList<VisitorToken> decorate(Corpus corpus){
+        ASTBuilder builder = new ASTBuilder();
+        corpus.grammar.matches(Corpus.scan(corpus.text), builder);
+        RawSyntaxTree tree = new RawSyntaxTree(builder.getTreeHead(), corpus.nodeType);
+        ClassTreeDecorator decorator = new ClassTreeDecorator();
+        decorator.decorate(tree, new ClassTree(), corpus.grammar);
+        ArrayList<VisitorToken> outcomes = new ArrayList<>();
+        decorator.transferOutcomes(outcomes);
+        return outcomes;
+    }
+
+}
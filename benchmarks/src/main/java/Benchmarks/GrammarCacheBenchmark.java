@@ -0,0 +1,60 @@
+package Benchmarks;
+
+import Compiler.Parser.CFG.AdvancedCFG;
+import Compiler.Parser.CFG.ContextFreeGrammar;
+import Compiler.Parser.CFG.GrammarCache;
+import Compiler.Parser.LanguageSource.JavaGrammar;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures getting the Java grammar ready to parse with: building it from its string and
+ * compiling it, against reading it back from its image. Single shots in fresh JVMs, as
+ * at startup.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(10)
+@org.openjdk.jmh.annotations.State(Scope.Benchmark)
+public class GrammarCacheBenchmark {
+
+    private File image;
+
+    /** Writes the image of the grammar, outside of the measurement **/
+    @Setup(Level.Trial)
+    public void writeImage() throws IOException {
+        image = File.createTempFile("JavaGrammar", ".grammar");
+        GrammarCache.write(image, JavaGrammar.getJavaSource(), JavaGrammar.getJavaGrammar());
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteImage(){image.delete();}
+
+    @Benchmark
+    public ContextFreeGrammar build(){
+        AdvancedCFG grammar = JavaGrammar.buildJavaGrammar();
+        grammar.compile();
+        return grammar;
+    }
+
+    @Benchmark
+    public ContextFreeGrammar read() throws IOException {
+        return GrammarCache.read(image, JavaGrammar.getJavaSource());
+    }
+
+}
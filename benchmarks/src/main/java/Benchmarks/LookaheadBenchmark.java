@@ -0,0 +1,67 @@
+package Benchmarks;
+
+import Compiler.Parser.Matcher.Matcher;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the Matcher with and without the lookahead on predictions. Besides the time,
+ * the number of states the Matcher adds and the number of rows it goes through are
+ * reported, so the states per row of each setting can be compared.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@org.openjdk.jmh.annotations.State(Scope.Benchmark)
+public class LookaheadBenchmark {
+
+    @Param({"true", "false"})
+    public boolean lookahead;
+
+    private boolean previous;
+
+    /** Turns the lookahead of the grammar on or off for the run **/
+    @Setup(Level.Trial)
+    public void setLookahead(Corpus corpus){
+        previous = corpus.grammar.hasLookahead();
+        corpus.grammar.setLookahead(lookahead);
+    }
+
+    /** Puts the lookahead of the grammar back; the grammars are shared **/
+    @TearDown(Level.Trial)
+    public void restoreLookahead(Corpus corpus){corpus.grammar.setLookahead(previous);}
+
+    @Benchmark
+    public Matcher parse(Corpus corpus, States count){
+        Matcher matcher = new Matcher(corpus.grammar, corpus.tokens);
+        count.states += matcher.getStateCount();
+        count.rows += corpus.tokens.length + 1;
+        return matcher;
+    }
+
+    /** Counts the states added and the rows they were added to **/
+    @org.openjdk.jmh.annotations.State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class States {
+        public long states, rows;
+
+        @Setup(Level.Iteration)
+        public void clear(){states = rows = 0;}
+    }
+
+}
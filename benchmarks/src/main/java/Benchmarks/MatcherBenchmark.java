@@ -0,0 +1,31 @@
+package Benchmarks;
+
+import Compiler.Parser.Matcher.Matcher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time the Matcher takes to recognize a file, per file and per token.
+ * No tree is built.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MatcherBenchmark {
+
+    @Benchmark
+    public Matcher parse(Corpus corpus, Corpus.Tokens count){
+        count.tokens += corpus.tokens.length;
+        return new Matcher(corpus.grammar, corpus.tokens);
+    }
+
+}
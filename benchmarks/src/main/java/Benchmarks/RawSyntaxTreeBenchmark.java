@@ -0,0 +1,40 @@
+package Benchmarks;
+
+import Compiler.Parser.ParserTree.ParserTreeNode;
+import Compiler.SemanticAnalyzer.RawSyntaxTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the construction of a RawSyntaxTree from the parse tree of a file.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RawSyntaxTreeBenchmark {
+
+    private ParserTreeNode tree;
+
+    @Setup(Level.Trial)
+    public void parse(Corpus corpus){tree = corpus.parseTree();}
+
+    @Benchmark
+    public RawSyntaxTree build(Corpus corpus){
+        return new RawSyntaxTree(tree, corpus.nodeType);
+    }
+
+}
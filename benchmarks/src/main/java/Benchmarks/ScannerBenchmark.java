@@ -0,0 +1,37 @@
+package Benchmarks;
+
+import Compiler.Scanner.LexerToken;
+import Compiler.Scanner.Scanner;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of Scanner.getNextToken over a whole file, whitespace and
+ * comments included.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScannerBenchmark {
+
+    @Benchmark
+    public void getNextToken(Corpus corpus, Corpus.Tokens count, Blackhole blackhole){
+        Scanner scanner = new Scanner(corpus.text, true);
+        LexerToken token;
+        while ((token = scanner.getNextToken()).getIds() != LexerToken.TokenIds.EOF){
+            blackhole.consume(token);
+            count.tokens++;
+        }
+    }
+
+}
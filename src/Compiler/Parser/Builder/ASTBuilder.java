@@ -7,25 +7,82 @@ import Compiler.Parser.CFG.*;
 import Compiler.Parser.Matcher.*;
 import Compiler.Scanner.LexerToken;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
 
 /**
  * This builder creates an ParserTree from a state that has been created by a Matcher.
  * A Builder cannot be used except by passing it into a Matcher.
+ * <br>The tree is read off the forest of derivations the Matcher keeps on its states
+ * (see PackedNode). Where a state has several, the one whose last term completed
+ * first in its row is taken, after those of productions of higher priority, and a
+ * term completed in the row of the node must complete ahead of the node, which keeps
+ * cycles of rules out. Each completed state is built once, so the tree takes time
+ * linear in the size of the forest, and it is built on a stack of its own, so a deep
+ * tree does not overflow the stack of the thread.
+ * <br>The trees built are kept until the next build. A builder of a reparse may take
+ * them over (see ASTBuilder(ASTBuilder)), and rebuild the tree of the edited input
+ * reusing those of the states the edit left alone.
  * Created by Matt Levine on 3/13/14.
  */
 public class ASTBuilder implements Builder {
 
+    //the kinds of step in building a tree (see Frame)
+    private static final int TREE = 0, TERMS = 1, TERM = 2;
+
     private ArrayList<ParserTreeNode> tree = null;
+    //the tree of each completed state built so far, or null if it has none
+    private IdentityHashMap<State,ParserTreeNode> built = new IdentityHashMap<>();
+
+    /** Constructs a new ASTBuilder **/
+    public ASTBuilder(){}
+
+    /** Constructs a new ASTBuilder that takes over the trees of another, to rebuild from
+     * a reparse of the input of the other (see rebuild)
+     * @param previous the builder of the previous input
+     */
+    public ASTBuilder(ASTBuilder previous){
+        built = previous.built;
+        previous.built = new IdentityHashMap<>();
+    }
 
     /** Builds the tree from an input state
      * @param inputState a state generated by a Matcher
      * @return an arraylist of head nodes; set of possible derivation trees
      */
     public ArrayList<ParserTreeNode> build(State inputState){
+        built.clear();
+        return buildFrom(inputState);
+    }
+
+    /** Builds the tree from the input state of a reparse, reusing the trees taken over
+     * of the states outside of the changed rows
+     * @param inputState a state generated by a Matcher
+     * @param firstChanged the index of the first changed row
+     * @param lastChanged the index of the last changed row
+     * @return an arraylist of head nodes; set of possible derivation trees
+     */
+    @Override
+    public ArrayList<ParserTreeNode> rebuild(State inputState, int firstChanged, int lastChanged){
+        built.keySet().removeIf(state -> state.getEnd_chartRow().getIndex() >= firstChanged &&
+                state.getStart_chartRow().getIndex() <= lastChanged);
+        return buildFrom(inputState);
+    }
+
+    /** Subroutine for building ParserTree: builds the tree from an input state, on the
+     * trees built so far
+     * @param inputState a state generated by a Matcher
+     * @return an arraylist of head nodes; set of possible derivation trees
+     */
+    private ArrayList<ParserTreeNode> buildFrom(State inputState){
         if (inputState == null) return null;
-        tree = buildTree(new ArrayList<>(), inputState,
-                inputState.getRules().size() - 1, inputState.getEnd_chartRow());
+        tree = new ArrayList<>();
+        ParserTreeNode head = buildTree(inputState);
+        if (head != null) tree.add(head);
         return tree;
     }
 
@@ -34,47 +91,181 @@ public class ASTBuilder implements Builder {
         throw new BuildMethodNotImplemented();
     }
 
-    /** Subroutine for building ParserTree
-     * @param children the children of the input node
-     * @param state the input state or current head
-     * @param rule_index the current position of the rule
-     * @param end_chartRow the end column containing the rule
-     * @return a tree of possible derivations from the input
+    /** Subroutine for building ParserTree: returns the tree of a completed state. The
+     * trees of its terms are built on a stack of frames rather than by recursion, so
+     * the depth of the tree is not bounded by the stack of the thread.
+     * @param state the completed state
+     * @return the tree of the state, or null if it has none
      */
-    private ArrayList<ParserTreeNode> buildTree(final ArrayList<ParserTreeNode> children,
-                                                final State state, int rule_index, ChartRow end_chartRow){
-        ChartRow start_chartRow = null; //might be wasted if rule_index < 0
-        if (rule_index < 0){
-            //a little complex (and some extra packaging going on) - just creating a node
-            //with children param as its input
-            return new ArrayList<ParserTreeNode>(){{add(new ParserTreeNode(
-                    state, children.toArray(new ParserTreeNode[children.size()])));}};
-        }else if (rule_index == 0){
-            start_chartRow = state.getStart_chartRow();
-        }
-
-        Rule rule = state.getRules().get(rule_index);
-        ArrayList<ParserTreeNode> outputs = new ArrayList<>();
-        for (State st : end_chartRow) {
-            //only require one valid path (also avoids infinite recursion)
-            if (outputs.size() > 0) break;
-            if (st == state) break;
-            if ((st.completed()) && st.name.equals(rule.getName())) {
-                if (start_chartRow == null || st.getStart_chartRow().equals(start_chartRow)) {
-                    for (final ParserTreeNode subtree : build(st)) {
-                        for (ParserTreeNode ParserTreeNode : buildTree(
-                                new ArrayList<ParserTreeNode>() {{
-                                    add(subtree);
-                                    addAll(children);
-                                }},
-                                state, rule_index - 1, st.getStart_chartRow())) {
-                            outputs.add(ParserTreeNode);
+    private ParserTreeNode buildTree(State state){
+        if (built.containsKey(state)) return built.get(state);
+        ArrayDeque<Frame> frames = new ArrayDeque<>();
+        frames.push(new Frame(state));
+        //what the frame last finished returned: a tree, or whether its terms have trees
+        ParserTreeNode tree = null;
+        boolean found = false;
+        while (!frames.isEmpty()){
+            Frame frame = frames.peek();
+            switch (frame.kind){
+                case TREE:
+                    if (frame.children == null){
+                        //a state is not built inside itself
+                        built.put(frame.state, null);
+                        frame.children = new ParserTreeNode[frame.state.getRules().size()];
+                        frames.push(new Frame(frame.state, frame.state, frame.children,
+                                frame.children.length - 1));
+                    }else {
+                        frames.pop();
+                        tree = found ? new ParserTreeNode(frame.state, frame.children) : null;
+                        built.put(frame.state, tree);
+                    }
+                    break;
+                case TERMS:
+                    if (frame.index < 0){
+                        frames.pop();
+                        found = true;
+                    }else if (frame.derivations == null){
+                        PackedNode derivation = frame.state.getDerivations();
+                        if (derivation == null){
+                            frames.pop();
+                            found = false;
+                            break;
                         }
+                        frame.derivations = derivation.getNext() == null ?
+                                Collections.singletonList(derivation) :
+                                order(frame.state, frame.node);
+                        frames.push(new Frame(frame.derivations.get(frame.next++), frame));
+                    }else if (found || frame.next == frame.derivations.size()){
+                        frames.pop();
+                    }else frames.push(new Frame(frame.derivations.get(frame.next++), frame));
+                    break;
+                case TERM:
+                    if (frame.next == 0){
+                        frame.next = 1;
+                        State child = frame.derivation.getChild();
+                        ChartRow row = child == null ? null : child.getEnd_chartRow();
+                        if (child == null || row == frame.node.getEnd_chartRow() &&
+                                row.indexOf(child) >= row.indexOf(frame.node)){
+                            frames.pop();
+                            found = false;
+                        }else if (!built.containsKey(child)) frames.push(new Frame(child));
+                        else tree = built.get(child);
+                    }else if (frame.next == 1){
+                        frame.next = 2;
+                        frame.subtree = tree;
+                        if (tree == null){
+                            frames.pop();
+                            found = false;
+                        }else frames.push(new Frame(frame.derivation.getPredecessor(),
+                                frame.node, frame.children, frame.index - 1));
+                    }else {
+                        frames.pop();
+                        if (found) frame.children[frame.index] = frame.subtree;
                     }
-                }
+                    break;
             }
         }
-        return outputs;
+        return tree;
+    }
+
+    /** Returns the derivations of a state in the order they are tried in: by the
+     * position of the child in its row, except that a child of a production of lowered
+     * priority comes after the others while the row holds a completion of higher
+     * priority over the same tokens; those are by priority
+     * @param state the state
+     * @param node the completed state of the node
+     * @return the derivations in order
+     */
+    private static List<PackedNode> order(State state, State node){
+        ChartRow row = state.getEnd_chartRow();
+        ArrayList<PackedNode> derivations = new ArrayList<>();
+        IdentityHashMap<PackedNode,Long> ranks = new IdentityHashMap<>();
+        for (PackedNode derivation = state.getDerivations(); derivation != null;
+             derivation = derivation.getNext()){
+            State child = derivation.getChild();
+            long rank = 0;
+            if (child != null){
+                int priority = child.getProduction().getPriority();
+                if (priority < 0 && row.isOutranked(child, node)) rank = (long) -priority << 32;
+            }
+            derivations.add(derivation);
+            ranks.put(derivation, rank);
+        }
+        //positions are taken once the row is whole (see ChartRow.isOutranked)
+        for (PackedNode derivation : derivations){
+            State child = derivation.getChild();
+            ranks.put(derivation, child == null ? Long.MAX_VALUE :
+                    ranks.get(derivation) | row.indexOf(child));
+        }
+        derivations.sort(Comparator.comparing(ranks::get));
+        return derivations;
+    }
+
+    /** A step in building a tree (see buildTree): the tree of a completed state, the
+     * trees of the terms of a production up to the dot of a state, or the tree of the
+     * term of one of its derivations with those of the terms before it
+     */
+    private static final class Frame {
+        private final int kind;
+        //the state, of the production of the node
+        private final State state;
+        //the completed state of the node
+        private final State node;
+        //the position of the term before the dot, or of the child of the derivation
+        private final int index;
+        private final PackedNode derivation;
+        //the trees of the terms of the node
+        private ParserTreeNode[] children;
+        //the derivations of the state, in the order they are tried in
+        private List<PackedNode> derivations = null;
+        //the next derivation tried, or how far the term has been built
+        private int next = 0;
+        //the tree of the term
+        private ParserTreeNode subtree = null;
+
+        /** Constructs the step building the tree of a completed state
+         * @param state the completed state
+         */
+        private Frame(State state){
+            this(TREE, state, state, null, -1, null);
+        }
+
+        /** Constructs the step building the trees of the terms up to the dot of a state
+         * @param state the state, of the production of the node
+         * @param node the completed state of the node
+         * @param children the trees of the terms of the node
+         * @param index the position of the term before the dot
+         */
+        private Frame(State state, State node, ParserTreeNode[] children, int index){
+            this(TERMS, state, node, children, index, null);
+        }
+
+        /** Constructs the step building the tree of the term of a derivation, and those
+         * of the terms before it
+         * @param derivation the derivation
+         * @param terms the step building the terms of the state of the derivation
+         */
+        private Frame(PackedNode derivation, Frame terms){
+            this(TERM, terms.state, terms.node, terms.children, terms.index, derivation);
+        }
+
+        /** Constructs a step
+         * @param kind the kind of the step
+         * @param state the state, of the production of the node
+         * @param node the completed state of the node
+         * @param children the trees of the terms of the node
+         * @param index the position of the term
+         * @param derivation the derivation of the term, or null
+         */
+        private Frame(int kind, State state, State node, ParserTreeNode[] children, int index,
+                      PackedNode derivation){
+            this.kind = kind;
+            this.state = state;
+            this.node = node;
+            this.children = children;
+            this.index = index;
+            this.derivation = derivation;
+        }
     }
 
     /** Returns the first possible derivation head, or null if none exist
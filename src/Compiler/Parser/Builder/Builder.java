@@ -13,6 +13,20 @@ import javafx.scene.chart.*;
 public interface Builder {
     public Object build(State inputState);
     public Object build(Chart chart);
+
+    /** Builds from the input state of a Matcher that reparsed an edited input (see
+     * Matcher). Only the rows from the first to the last changed one are new; what
+     * the Builder built from the previous Matcher for states outside of them may be
+     * reused. By default, builds anew.
+     * @param inputState a state generated by a Matcher
+     * @param firstChanged the index of the first changed row
+     * @param lastChanged the index of the last changed row, of the new chart or the
+     *                    previous one, whichever is larger
+     * @return the output of the build
+     */
+    public default Object rebuild(State inputState, int firstChanged, int lastChanged){
+        return build(inputState);
+    }
     public ParserTreeNode getTreeHead();
 
     class BuildMethodNotImplemented extends RuntimeException{
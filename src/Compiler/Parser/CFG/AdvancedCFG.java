@@ -20,9 +20,10 @@ import static java.lang.Math.round;
  * production. Dot and dollar-sign are used internally
  * <br>The AdvancedCFG offers a more important feature too - <b>prioritization</b>.
  * You can manually lower the priority of a production, meaning that it will only
- * be used if all productions of a higher priority are not matched. This is implemented
- * in a very slow way, and should only be used where manipulating the grammar to accomplish
- * the same goal is impossible or extremely inconvenient. See the manual for more detail.
+ * be used if all productions of a higher priority are not matched. The priority is kept
+ * on the production and settled when the tree is built, so it costs nothing to match;
+ * it should still only be used where manipulating the grammar to accomplish the same
+ * goal is impossible or extremely inconvenient. See the manual for more detail.
  * <br>For technical reasons, the advanced properties cannot be used together. For example,
  * a single production cannot employ square and regular braces; productions using square
  * or regular braces cannot have their priority successfully lowered. The priority of
@@ -44,6 +45,24 @@ public final class AdvancedCFG extends ContextFreeGrammar {
         super(constructor);
     }
 
+    /** For internal use in reading CFGs back in (see GrammarCache) **/
+    AdvancedCFG(String root, HashMap<String,Rule> nonterminals, HashSet<String> terminals,
+                int factory, HashSet<String> loweredPriorities){
+        super(root, nonterminals, terminals);
+        this.factory = factory;
+        this.loweredPriorities = loweredPriorities;
+    }
+
+    /** Returns the number of rules generated for braces so far
+     * @return the number of generated rules
+     */
+    int getFactory(){return factory;}
+
+    /** Returns the rules whose priority has been lowered
+     * @return the names of the lowered rules
+     */
+    Set<String> getLoweredPriorities(){return loweredPriorities;}
+
 
     @Override
     /** Builds the rule defined by the input string to the Parser.CFG
@@ -68,8 +87,9 @@ public final class AdvancedCFG extends ContextFreeGrammar {
 
     /** Attempts to lower the priority of the rule with the given name and
      * target, i.e a rule of the form <b>ruleName->ruleTarget</b>. Does
-     * nothing if fails. This is a very costly operation, and each lowered
-     * priority can drastically slow down the cost of calling <i>matches</i>.
+     * nothing if fails. The production keeps its place in the rule; where the rule
+     * derives the same tokens by another production, the other is taken (see
+     * Production.getPriority).
      * @param ruleName the left side of the rule
      * @param productionName the right side of the rule
      * @param magnitude the amount by which to lower the priority
@@ -81,30 +101,14 @@ public final class AdvancedCFG extends ContextFreeGrammar {
                     "Advanced CFG Err: cannot re-lower priority for "+ruleName);
         loweredPriorities.add(ruleName);
 
-        //Uber-convoluted but okay
         if (nonterminals.containsKey(ruleName)){
             Rule rule = nonterminals.get(ruleName);
-//            int index = -1;
             for (int index = 0; index < rule.productions.size(); index++) {
-                if (rule.productions.get(index).toString().contains(productionName)) {
-                    Production prod = rule.productions.get(index);
-                    String lastProd = productionName;
-                    rule.productions.remove(index);
-
-                    for (int d = 0; d < magnitude; d++) {
-                        String constructor = productionName + "." + d + "->" + lastProd;
-                        super.addRule(constructor);
-                        super.buildRule(constructor);
-                        lastProd = productionName + "." + d;
-                    }
-                    super.buildRule(ruleName + "->" +
-                                 (" " +prod.toString()+ " ").replaceAll( "[\" \"]"
-                                + productionName +
-                                 "[\" \"]", " "+productionName +
-                                "." + (magnitude - 1)+ " ").trim());
-
-                }
+                Production prod = rule.productions.get(index);
+                if (prod.toString().equals(productionName))
+                    rule.productions.set(index, prod.withPriority(prod.getPriority() - magnitude));
             }
+            invalidateCompiled();
         }
 
     }
@@ -0,0 +1,441 @@
+package Compiler.Parser.CFG;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * This class is designed to present a CFG to the Matcher as integers. Every rule name,
+ * terminal included, gets a dense symbol id, and every production gets a dense
+ * production id and is encoded as an int[] of its terms: a Rule term is its symbol id,
+ * and a token term is the complement (~) of the id of its name, so a negative term is
+ * scanned and a positive one predicted.
+ * <br>Each position of the dot in each production is also numbered (an item), so an
+ * Earley state reduces to an (item, origin) pair of ints. The symbols that derive the
+ * empty string, and the tokens that may begin each production (its FIRST set), are
+ * found when the grammar is compiled.
+ * <br>Rules are named uniquely in a CFG, except that every use of a terminal creates a
+ * Rule of its own; those Rules all derive the same token, so the first one found stands
+ * for all of them. A compiled grammar is immutable; it is a snapshot of the CFG at the
+ * time it is compiled (see ContextFreeGrammar.compile).
+ * <br>What is found about the symbols can be written out with the grammar (see
+ * GrammarCache), so that it need not be found again when the grammar is read back in.
+ * The shortest derivation of each symbol, which only the Matcher's error recovery
+ * needs, is found the first time it is asked for instead.
+ */
+public final class CompiledGrammar {
+
+    /** The name of the rule added above the start rule of the CFG **/
+    public static final String START_NAME = "GAMMA_RULE";
+
+    private final HashMap<String,Integer> symbols = new HashMap<>();
+    private final ArrayList<String> names = new ArrayList<>();
+    private final int[][] productionsOf;
+    private final int[] lefts;
+    private final int[][] terms;
+    private final int[] firstItems;
+    private final Production[] productions;
+    private final List<List<Rule>> rules;
+    private final int startProduction;
+    private final int itemCount;
+    //the symbols that derive the empty string, and those with an empty production
+    private final boolean[] nullable, empty;
+    //the tokens that may begin each production, one bit per symbol id, and the
+    //productions that derive the empty string
+    private final long[][] firsts;
+    private final boolean[] nullableProductions;
+    //the number of tokens in the shortest string each symbol derives, and the production
+    //it is derived by, once found (see getShortestLength)
+    private volatile int[] shortest;
+    private int[] shortestProductions;
+
+    /** Compiles the rules reachable from the given start rule
+     * @param start the start rule of the CFG
+     */
+    CompiledGrammar(Rule start){
+        this(start, null);
+    }
+
+    /** Compiles the rules reachable from the given start rule, reading the nullable
+     * symbols and FIRST sets from a grammar image rather than finding them again
+     * @param start the start rule of the CFG
+     * @param image the image at what was written out for the grammar (see write), or
+     *              null to find it
+     */
+    @SuppressWarnings("unchecked")
+    CompiledGrammar(Rule start, ByteBuffer image){
+        //number the rules breadth first, along with their productions
+        ArrayList<Rule> ruleOrder = new ArrayList<>();
+        ArrayList<Production> productionOrder = new ArrayList<>();
+        IdentityHashMap<Production,Integer> productionIds = new IdentityHashMap<>();
+        ArrayList<Integer> leftOrder = new ArrayList<>();
+
+        //the start symbol is not looked up by name, so it cannot clash with a rule
+        int startSymbol = names.size();
+        names.add(START_NAME);
+        ruleOrder.add(null);
+        Production startProd = new Production(start);
+        productionIds.put(startProd, 0);
+        productionOrder.add(startProd);
+        leftOrder.add(startSymbol);
+        symbolOf(start, ruleOrder);
+
+        for (int r = 1; r < ruleOrder.size(); r++){
+            for (Production prod : ruleOrder.get(r).productions){
+                if (productionIds.containsKey(prod)) continue;
+                productionIds.put(prod, productionOrder.size());
+                productionOrder.add(prod);
+                leftOrder.add(r);
+                for (Termable term : prod)
+                    if (term instanceof Rule) symbolOf((Rule) term, ruleOrder);
+            }
+        }
+
+        //lay out the productions
+        int count = productionOrder.size();
+        productions = productionOrder.toArray(new Production[count]);
+        lefts = new int[count];
+        terms = new int[count][];
+        firstItems = new int[count];
+        rules = new ArrayList<>(count);
+        int items = 0;
+        for (int p = 0; p < count; p++){
+            Production prod = productions[p];
+            lefts[p] = leftOrder.get(p);
+            terms[p] = new int[prod.size()];
+            ArrayList<Rule> prodRules = new ArrayList<>();
+            for (int t = 0; t < prod.size(); t++){
+                Termable term = prod.get(t);
+                if (term instanceof Rule){
+                    terms[p][t] = symbols.get(term.getName());
+                    prodRules.add((Rule) term);
+                }else terms[p][t] = ~tokenOf(term.getName());
+            }
+            rules.add(prodRules.isEmpty() ? Collections.<Rule>emptyList() :
+                    Collections.unmodifiableList(prodRules));
+            firstItems[p] = items;
+            items += prod.size() + 1;
+        }
+        itemCount = items;
+        startProduction = 0;
+
+        //the productions of each symbol, in the order of the rule
+        productionsOf = new int[names.size()][];
+        productionsOf[startSymbol] = new int[]{startProduction};
+        for (int s = 1; s < ruleOrder.size(); s++){
+            ArrayList<Production> ruleProds = ruleOrder.get(s).productions;
+            productionsOf[s] = new int[ruleProds.size()];
+            for (int i = 0; i < ruleProds.size(); i++)
+                productionsOf[s][i] = productionIds.get(ruleProds.get(i));
+        }
+        for (int s = ruleOrder.size(); s < names.size(); s++)
+            productionsOf[s] = new int[0];
+
+        //what is found below may have been written out with the grammar already
+        int words = (names.size() + 63) >>> 6;
+        if (image != null){
+            if (image.getLong() != getFingerprint())
+                throw new RuntimeException("Compiled Grammar Err: image is of another grammar");
+            nullable = readFlags(image, names.size());
+            empty = readFlags(image, names.size());
+            nullableProductions = readFlags(image, count);
+            firsts = readSets(image, count, words);
+            return;
+        }
+
+        //find the nullable symbols, until no more are found
+        nullable = new boolean[names.size()];
+        empty = new boolean[names.size()];
+        for (int p = 0; p < count; p++)
+            if (terms[p].length == 0) nullable[lefts[p]] = empty[lefts[p]] = true;
+        boolean found = true;
+        while (found){
+            found = false;
+            for (int p = 0; p < count; p++){
+                if (nullable[lefts[p]]) continue;
+                boolean all = true;
+                for (int term : terms[p]) all &= term >= 0 && nullable[term];
+                if (all) found = nullable[lefts[p]] = true;
+            }
+        }
+
+        //find the tokens that may begin each symbol, until no more are found
+        long[][] symbolFirsts = new long[names.size()][words];
+        firsts = new long[count][];
+        found = true;
+        while (found){
+            found = false;
+            for (int p = 0; p < count; p++)
+                found |= addFirsts(terms[p], symbolFirsts, symbolFirsts[lefts[p]]);
+        }
+        nullableProductions = new boolean[count];
+        for (int p = 0; p < count; p++){
+            firsts[p] = new long[words];
+            addFirsts(terms[p], symbolFirsts, firsts[p]);
+            nullableProductions[p] = true;
+            for (int term : terms[p]) nullableProductions[p] &= term >= 0 && nullable[term];
+        }
+    }
+
+    /** Adds the tokens that may begin the given terms to a set
+     * @param terms the encoded terms of a production
+     * @param symbolFirsts the tokens found so far to begin each symbol
+     * @param into the set of tokens, one bit per symbol id
+     * @return true if a token was added
+     */
+    private boolean addFirsts(int[] terms, long[][] symbolFirsts, long[] into){
+        boolean added = false;
+        for (int term : terms){
+            if (term < 0){
+                int token = ~term;
+                added |= (into[token >>> 6] & (1L << token)) == 0;
+                into[token >>> 6] |= 1L << token;
+                return added;
+            }
+            long[] first = symbolFirsts[term];
+            for (int w = 0; w < into.length; w++){
+                added |= (first[w] & ~into[w]) != 0;
+                into[w] |= first[w];
+            }
+            if (!nullable[term]) return added;
+        }
+        return added;
+    }
+
+    /** Returns the symbol id of a rule, numbering it if it is new
+     * @param rule the rule
+     * @param ruleOrder the rules numbered so far, by symbol id
+     * @return the symbol id of the rule
+     */
+    private int symbolOf(Rule rule, ArrayList<Rule> ruleOrder){
+        Integer id = symbols.get(rule.getName());
+        if (id != null) return id;
+        symbols.put(rule.getName(), names.size());
+        names.add(rule.getName());
+        ruleOrder.add(rule);
+        return names.size() - 1;
+    }
+
+    /** Returns the symbol id of a token name, numbering it if it is new
+     * @param name the name of the token
+     * @return the symbol id of the name
+     */
+    private int tokenOf(String name){
+        Integer id = symbols.get(name);
+        if (id != null) return id;
+        symbols.put(name, names.size());
+        names.add(name);
+        return names.size() - 1;
+    }
+
+    /** Returns the symbol id of the given name
+     * @param name the name of a rule or token
+     * @return the symbol id, or -1 if the grammar does not use the name
+     */
+    public int getSymbol(String name){
+        Integer id = name == null ? null : symbols.get(name);
+        return id == null ? -1 : id;
+    }
+
+    /** Returns the name of a symbol
+     * @param symbol the symbol id
+     * @return the name of the symbol
+     */
+    public String getName(int symbol){return names.get(symbol);}
+
+    /** Returns the number of symbols
+     * @return the number of symbols
+     */
+    public int getSymbolCount(){return names.size();}
+
+    /** Returns the productions of a symbol, in the order of its rule
+     * @param symbol the symbol id
+     * @return the production ids of the symbol; must not be modified
+     */
+    public int[] getProductions(int symbol){return productionsOf[symbol];}
+
+    /** Returns true if the rule of the symbol derives the empty string
+     * @param symbol the symbol id
+     * @return true if the symbol is nullable
+     */
+    public boolean isNullable(int symbol){return nullable[symbol];}
+
+    /** Returns true if the rule of the symbol has an empty production
+     * @param symbol the symbol id
+     * @return true if the symbol has an empty production
+     */
+    public boolean hasEmptyProduction(int symbol){return empty[symbol];}
+
+    /** Returns the number of tokens in the shortest string a term derives
+     * @param term the encoded term: a symbol id, or the complement of a token's
+     * @return the length of the shortest string, or Integer.MAX_VALUE if the term derives
+     * none
+     */
+    public int getShortestLength(int term){
+        if (term < 0) return 1;
+        if (shortest == null) findShortest();
+        return shortest[term];
+    }
+
+    /** Returns the production of the shortest string the rule of a symbol derives
+     * (see getShortestLength)
+     * @param symbol the symbol id
+     * @return the production id, or -1 if the symbol derives no string
+     */
+    public int getShortestProduction(int symbol){
+        if (shortest == null) findShortest();
+        return shortestProductions[symbol];
+    }
+
+    /** Finds the shortest string each symbol derives, until no shorter one is found.
+     * Productions are only recorded when they are shorter than the one before, so
+     * following them from a symbol never comes back to it.
+     */
+    private synchronized void findShortest(){
+        if (shortest != null) return;
+        int[] lengths = new int[names.size()], by = new int[names.size()];
+        Arrays.fill(lengths, Integer.MAX_VALUE);
+        Arrays.fill(by, -1);
+        boolean found = true;
+        while (found){
+            found = false;
+            for (int p = 0; p < terms.length; p++){
+                long length = 0;
+                for (int term : terms[p]) length += term < 0 ? 1 : lengths[term];
+                if (length < lengths[lefts[p]]){
+                    lengths[lefts[p]] = (int) length;
+                    by[lefts[p]] = p;
+                    found = true;
+                }
+            }
+        }
+        shortestProductions = by;
+        shortest = lengths;
+    }
+
+    /** Returns true if the production may derive a string that begins with the given
+     * token, or the empty string
+     * @param production the production id
+     * @param token the symbol id of the token, or -1 for the end of the input
+     * @return false if the production cannot be the next one to match
+     */
+    public boolean canBegin(int production, int token){
+        return token >= 0 && (firsts[production][token >>> 6] & (1L << token)) != 0 ||
+                nullableProductions[production];
+    }
+
+    /** Writes out what was found about the symbols of the grammar, to be read back in
+     * for the same rules (see CompiledGrammar(Rule, ByteBuffer))
+     * @param out the stream to write to
+     * @throws IOException if it cannot be written
+     */
+    void write(DataOutputStream out) throws IOException {
+        out.writeLong(getFingerprint());
+        for (boolean[] flags : new boolean[][]{nullable, empty, nullableProductions})
+            for (boolean flag : flags) out.writeBoolean(flag);
+        for (long[] set : firsts)
+            for (long word : set) out.writeLong(word);
+    }
+
+    /** Reads the given number of flags
+     * @param in the image to read from
+     * @param count the number of flags
+     * @return the flags read
+     */
+    private static boolean[] readFlags(ByteBuffer in, int count){
+        boolean[] flags = new boolean[count];
+        for (int i = 0; i < count; i++) flags[i] = in.get() != 0;
+        return flags;
+    }
+
+    /** Reads the given number of sets of tokens
+     * @param in the image to read from
+     * @param count the number of sets
+     * @param words the width of a set
+     * @return the sets read
+     */
+    private static long[][] readSets(ByteBuffer in, int count, int words){
+        long[][] sets = new long[count][words];
+        for (long[] set : sets)
+            for (int w = 0; w < words; w++) set[w] = in.getLong();
+        return sets;
+    }
+
+    /** Returns a hash of the symbols and productions of the grammar. Grammars with the
+     * same fingerprint number their symbols, productions and items the same way.
+     * @return the fingerprint of the grammar
+     */
+    public long getFingerprint(){
+        long hash = 0xcbf29ce484222325L;
+        for (String name : names){
+            for (int i = 0; i < name.length(); i++) hash = (hash ^ name.charAt(i)) * 0x100000001b3L;
+            hash = (hash ^ 0xff) * 0x100000001b3L;
+        }
+        for (int p = 0; p < terms.length; p++){
+            hash = (hash ^ lefts[p]) * 0x100000001b3L;
+            for (int term : terms[p]) hash = (hash ^ term) * 0x100000001b3L;
+            hash = (hash ^ 0xffff) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /** Returns the number of productions
+     * @return the number of productions
+     */
+    public int getProductionCount(){return terms.length;}
+
+    /** Returns the symbol on the left side of a production
+     * @param production the production id
+     * @return the symbol id of the rule of the production
+     */
+    public int getLeft(int production){return lefts[production];}
+
+    /** Returns the encoded terms of a production: symbol ids for rules, complemented
+     * symbol ids for tokens
+     * @param production the production id
+     * @return the terms of the production; must not be modified
+     */
+    public int[] getTerms(int production){return terms[production];}
+
+    /** Returns the Production a production id stands for
+     * @param production the production id
+     * @return the Production
+     */
+    public Production getProduction(int production){return productions[production];}
+
+    /** Returns the priority of a production (see Production.getPriority)
+     * @param production the production id
+     * @return the priority, 0 unless it has been lowered
+     */
+    public int getPriority(int production){return productions[production].getPriority();}
+
+    /** Returns the Rule terms of a production
+     * @param production the production id
+     * @return the rules of the production, in order
+     */
+    public List<Rule> getRules(int production){return rules.get(production);}
+
+    /** Returns the item of a production with the dot at the given position
+     * @param production the production id
+     * @param dot the position of the dot
+     * @return the item id
+     */
+    public int getItem(int production, int dot){return firstItems[production] + dot;}
+
+    /** Returns the number of items
+     * @return the number of items
+     */
+    public int getItemCount(){return itemCount;}
+
+    /** Returns the production of the start rule, START_NAME -> the start rule of the CFG
+     * @return the production id of the start production
+     */
+    public int getStartProduction(){return startProduction;}
+
+}
@@ -3,6 +3,7 @@ package Compiler.Parser.CFG;
 import Compiler.Parser.Builder.*;
 import Compiler.Parser.Matcher.*;
 import Compiler.Scanner.LexerToken;
+import Compiler.Scanner.TokenBuffer;
 import Compiler.Scanner.LexerToken.*;
 
 import java.util.*;
@@ -52,6 +53,9 @@ public class ContextFreeGrammar {
     protected final HashMap<String,Rule> nonterminals;
     protected final HashSet<String> terminals;
     private final String root;
+    //the grammar as the Matcher reads it, compiled on first use
+    private volatile CompiledGrammar compiled = null;
+    private volatile boolean lookahead = true;
     //Someone listening can do something when an error is reported by the CFG
 //    public static SimpleBooleanProperty errorReported = new SimpleBooleanProperty();
 
@@ -87,14 +91,27 @@ public class ContextFreeGrammar {
         this.root = parent.root;
     }
 
+    /** For internal use in reading CFGs back in (see GrammarCache) **/
+    protected ContextFreeGrammar(String root, HashMap<String,Rule> nonterminals,
+                                 HashSet<String> terminals){
+        this.root = root;
+        this.nonterminals = nonterminals;
+        this.terminals = terminals;
+    }
+
     /** Adds the rule defined by the input string to the CFG
      * @param definition the string representation of the rule
      */
     protected final void addRule(String definition){
         String[] rule = definition.split("->");
         nonterminals.put(rule[0],new Rule(rule[0]));
+        compiled = null;
      }
 
+    /** Drops the compiled CFG after its rules have been changed, so it is compiled
+     * again on use **/
+    protected final void invalidateCompiled(){compiled = null;}
+
     /** Builds the rule defined by the input string to the CFG
      * @param definition the string representation of the rule
      */
@@ -119,6 +136,7 @@ public class ContextFreeGrammar {
         }
         //add a production from that ruleset to the rule
         rule.add(new Production(ruleset.toArray(new Rule[ruleset.size()])));
+        compiled = null;
     }
 
     /** Returns a matcher associated with this CFG defined by
@@ -140,11 +158,123 @@ public class ContextFreeGrammar {
         return new Matcher(this, lexerTokens,builder);
     }
 
+    /** Returns a matcher associated with this CFG defined by
+     * the input CFGTokens, an edit of the input of a previous matcher, and passes to it
+     * the given builder. The chart of the previous matcher is reused where the edit
+     * leaves it alone (see Matcher).
+     * @param lexerTokens the input stream
+     * @param builder a builder to pass to the matcher
+     * @param previous the matcher of the input before the edit, or null
+     * @return an associated Parser.Matcher
+     */
+    public Matcher matches(LexerToken[] lexerTokens, Builder builder, Matcher previous){
+        return new Matcher(this, lexerTokens, builder, previous);
+    }
+
+    /** Returns a matcher associated with this CFG defined by the input CFGTokens, in
+     * recovery mode if asked to (see Matcher.getErrors), and passes to it the given
+     * builder. The chart of a previous matcher in the same mode is reused where an edit
+     * leaves it alone (see Matcher).
+     * @param lexerTokens the input stream
+     * @param builder a builder to pass to the matcher
+     * @param previous the matcher of the input before an edit, or null
+     * @param recover true to recover from bad tokens
+     * @return an associated Parser.Matcher
+     */
+    public Matcher matches(LexerToken[] lexerTokens, Builder builder, Matcher previous,
+                           boolean recover){
+        return new Matcher(this, lexerTokens, builder, previous, recover);
+    }
+
+    /** Returns a matcher associated with this CFG defined by the input CFGTokens, held
+     * to the given budget (see ParseBudget), as matches(LexerToken[], Builder, Matcher,
+     * boolean) does
+     * @param lexerTokens the input stream
+     * @param builder a builder to pass to the matcher
+     * @param previous the matcher of the input before an edit, or null
+     * @param recover true to recover from bad tokens
+     * @param budget the budget to hold the matcher to
+     * @return an associated Parser.Matcher
+     */
+    public Matcher matches(LexerToken[] lexerTokens, Builder builder, Matcher previous,
+                           boolean recover, ParseBudget budget){
+        return new Matcher(this, lexerTokens, builder, previous, recover, budget);
+    }
+
+    /** Returns a matcher associated with this CFG defined by
+     * the input tokens, ignoring whitespace and comments
+     * @param tokens the input stream
+     * @return an associated Parser.Matcher
+     */
+    public Matcher matches(TokenBuffer tokens){
+        return new Matcher(this, tokens);
+    }
+
+    /** Returns a matcher associated with this CFG defined by
+     * the input tokens, ignoring whitespace and comments, and passes to it the given builder
+     * @param tokens the input stream
+     * @param builder a builder to pass to the matcher
+     * @return an associated Parser.Matcher
+     */
+    public Matcher matches(TokenBuffer tokens, Builder builder){
+        return new Matcher(this, tokens,builder);
+    }
+
+    /** Returns a matcher associated with this CFG defined by
+     * the input tokens, ignoring whitespace and comments, held to the given budget (see
+     * ParseBudget), and passes to it the given builder
+     * @param tokens the input stream
+     * @param builder a builder to pass to the matcher
+     * @param budget the budget to hold the matcher to
+     * @return an associated Parser.Matcher
+     */
+    public Matcher matches(TokenBuffer tokens, Builder builder, ParseBudget budget){
+        return new Matcher(this, tokens, builder, budget);
+    }
+
+    /** Returns a matcher associated with this CFG with no input yet, to feed tokens to
+     * as they are scanned (see Matcher.feed); the given builder is passed to it
+     * @param builder a builder to pass to the matcher, or null to only match
+     * @return an associated Parser.Matcher
+     */
+    public Matcher matcher(Builder builder){
+        return new Matcher(this, builder);
+    }
+
     /** Returns the starting rule
      * @return the starting rule
      */
     public Rule getStartRule(){return nonterminals.get(root);}
 
+    /** Returns the CFG compiled into integers for the Matcher. The CFG is compiled the
+     * first time it is asked for, and again after rules are added to it; changes made
+     * directly to its Rules afterwards are not seen.
+     * @return the compiled CFG
+     */
+    public CompiledGrammar compile(){
+        CompiledGrammar grammar = compiled;
+        if (grammar == null){
+            synchronized (this){
+                if (compiled == null) compiled = new CompiledGrammar(getStartRule());
+                grammar = compiled;
+            }
+        }
+        return grammar;
+    }
+
+    /** Takes on a compiled grammar read back in for this CFG, so it need not be compiled
+     * (see GrammarCache)
+     * @param grammar the compiled CFG
+     */
+    synchronized void adopt(CompiledGrammar grammar){
+        compiled = grammar;
+    }
+
+    /** Returns the name of the starting rule
+     * @return the name of the starting rule, or null if the CFG is empty
+     */
+    String getRoot(){return root;}
+
     /** Returns null if all non-terminals have a path to the starting non-terminal.
      * Operates in O(n^2) time (?) - only should be used for debugging or once
      * per CFG construction. Is not implicitly called by CFGs. If there are non-terminals
@@ -200,6 +330,19 @@ public class ContextFreeGrammar {
         return unreachables.size() == 0 ? null : unreachables;
     }
 
+    /** Sets whether Matchers of this CFG look at the next token before predicting a
+     * production, and leave out the productions that cannot begin with it. On by
+     * default; it does not change what is matched.
+     * @param lookahead true to predict only the productions that may match
+     */
+    public void setLookahead(boolean lookahead){this.lookahead = lookahead;}
+
+    /** Returns true if Matchers of this CFG leave out the productions that cannot begin
+     * with the next token
+     * @return true if the lookahead is on
+     */
+    public boolean hasLookahead(){return lookahead;}
+
     /** Returns a List of all reachable non-terminals
      * @return a list of all reachable non-terminals
      */
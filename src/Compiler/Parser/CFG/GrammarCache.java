@@ -0,0 +1,306 @@
+package Compiler.Parser.CFG;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+/**
+ * This class is designed to keep CFGs on disk once they are built, so that a large
+ * grammar is not built from its string every time the program starts. The image of a
+ * CFG holds its expanded rules, with every name interned to an id, together with what
+ * compiling it finds (see CompiledGrammar). Images are mapped into memory to be read.
+ * <br>An image is kept for the source of the CFG: whatever decides its rules, such as
+ * the CFG string and the priorities lowered on it. A hash of the source is written into
+ * the image, and an image with another hash is built again, as is a damaged image.
+ * <br>Images are kept in the directory named by the system property "violet.grammars",
+ * or else in ".violet/grammars" under the home directory of the user.
+ */
+public final class GrammarCache {
+
+    private static final int MAGIC = 0x56434647;
+    //the layout of images, and of the rules CFGs expand to; images of another version
+    //are built again
+    private static final int VERSION = 2;
+    private static final byte PLAIN = 0, ADVANCED = 1;
+
+    private GrammarCache(){}
+
+    /** Returns the directory the images of CFGs are kept in
+     * @return the directory of images, which may not exist yet
+     */
+    public static File getDirectory(){
+        String directory = System.getProperty("violet.grammars");
+        if (directory != null) return new File(directory);
+        return new File(new File(System.getProperty("user.home"), ".violet"), "grammars");
+    }
+
+    /** Returns the CFG of a source, read from its image if the image is of the same
+     * source, or else built and written to a new image. A CFG that cannot be read or
+     * written is still built.
+     * @param name the name of the image, unique to the CFG
+     * @param source the source of the CFG
+     * @param builder builds the CFG from its source
+     * @return the CFG
+     */
+    public static ContextFreeGrammar load(String name, String source,
+                                          Supplier<? extends ContextFreeGrammar> builder){
+        File file = new File(getDirectory(), name + ".grammar");
+        try {
+            ContextFreeGrammar grammar = read(file, source);
+            if (grammar != null) return grammar;
+        }catch (IOException e){
+            //a damaged image is built again
+        }
+        ContextFreeGrammar grammar = builder.get();
+        try {
+            write(file, source, grammar);
+        }catch (IOException e){
+            //the CFG is built again next time
+        }
+        return grammar;
+    }
+
+    /** Reads the CFG of a source from its image
+     * @param file the image
+     * @param source the source of the CFG
+     * @return the CFG, or null if there is no image or it is of another source
+     * @throws IOException if the image cannot be read
+     */
+    public static ContextFreeGrammar read(File file, String source) throws IOException {
+        if (!file.isFile()) return null;
+        MappedByteBuffer in;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)){
+            //the mapping stays valid after the channel is closed
+            in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        try {
+            if (in.getInt() != MAGIC) throw new IOException("Not a grammar image");
+            if (in.getInt() != VERSION || in.getLong() != hash(source)) return null;
+            long sum = in.getLong();
+            CRC32 check = new CRC32();
+            check.update(in.slice());
+            if (check.getValue() != sum) throw new IOException("Damaged grammar image");
+            byte kind = in.get();
+
+            String[] names = new String[in.getInt()];
+            for (int n = 0; n < names.length; n++){
+                char[] name = new char[in.getInt()];
+                in.asCharBuffer().get(name);
+                in.position(in.position() + 2 * name.length);
+                names[n] = new String(name);
+            }
+            int root = in.getInt();
+
+            //the rules first, then their productions, which may refer to any of them
+            Rule[] rules = new Rule[in.getInt()];
+            int named = in.getInt();
+            HashMap<String,Rule> nonterminals = new HashMap<>();
+            for (int r = 0; r < rules.length; r++){
+                rules[r] = new Rule(names[in.getInt()]);
+                if (r < named) nonterminals.put(rules[r].getName(), rules[r]);
+            }
+            HashSet<String> terminals = new HashSet<>();
+            for (int t = in.getInt(); t > 0; t--) terminals.add(names[in.getInt()]);
+            for (Rule rule : rules){
+                for (int p = in.getInt(); p > 0; p--){
+                    int priority = in.getInt();
+                    Rule[] terms = new Rule[in.getInt()];
+                    for (int t = 0; t < terms.length; t++){
+                        int term = in.getInt();
+                        //every use of a terminal is a Rule of its own, as when it is built
+                        terms[t] = term >= 0 ? rules[term] :
+                                new Rule(names[~term], new Production(names[~term]));
+                    }
+                    rule.add(new Production(priority, terms));
+                }
+            }
+
+            ContextFreeGrammar grammar;
+            String rootName = root < 0 ? null : names[root];
+            if (kind == ADVANCED){
+                int factory = in.getInt();
+                HashSet<String> lowered = new HashSet<>();
+                for (int l = in.getInt(); l > 0; l--) lowered.add(names[in.getInt()]);
+                grammar = new AdvancedCFG(rootName, nonterminals, terminals, factory, lowered);
+            }else grammar = new ContextFreeGrammar(rootName, nonterminals, terminals);
+
+            if (rootName != null){
+                grammar.adopt(new CompiledGrammar(grammar.getStartRule(), in));
+            }
+            return grammar;
+        }catch (BufferUnderflowException | IndexOutOfBoundsException e){
+            throw new IOException("Truncated grammar image");
+        }catch (RuntimeException e){
+            throw new IOException("Damaged grammar image: " + e.getMessage());
+        }
+    }
+
+    /** Writes the image of a CFG, compiling it first if need be.
+     * The image is written beside the file and then moved over it, so that an image is
+     * never read half written.
+     * @param file the image
+     * @param source the source of the CFG
+     * @param grammar the CFG
+     * @throws IOException if the image cannot be written
+     */
+    public static void write(File file, String source, ContextFreeGrammar grammar)
+            throws IOException {
+        //intern the names, and number the rules in the order they are written: those of
+        //the CFG, then any others their productions use, such as a rule replaced in the
+        //CFG after it was used
+        ArrayList<String> names = new ArrayList<>();
+        HashMap<String,Integer> nameIds = new HashMap<>();
+        ArrayList<Rule> rules = new ArrayList<>(grammar.nonterminals.values());
+        IdentityHashMap<Rule,Integer> ruleIds = new IdentityHashMap<>();
+        for (Rule rule : rules) ruleIds.put(rule, ruleIds.size());
+        for (String terminal : grammar.terminals) intern(terminal, names, nameIds);
+        if (grammar.getRoot() != null) intern(grammar.getRoot(), names, nameIds);
+        if (grammar instanceof AdvancedCFG)
+            for (String lowered : ((AdvancedCFG) grammar).getLoweredPriorities())
+                intern(lowered, names, nameIds);
+        ArrayList<int[][]> terms = new ArrayList<>();
+        ArrayList<int[]> priorities = new ArrayList<>();
+        for (int r = 0; r < rules.size(); r++){
+            intern(rules.get(r).getName(), names, nameIds);
+            ArrayList<Production> productions = rules.get(r).productions;
+            int[][] ruleTerms = new int[productions.size()][];
+            int[] rulePriorities = new int[productions.size()];
+            for (int p = 0; p < productions.size(); p++){
+                Production prod = productions.get(p);
+                rulePriorities[p] = prod.getPriority();
+                ruleTerms[p] = new int[prod.size()];
+                for (int t = 0; t < prod.size(); t++){
+                    Termable term = prod.get(t);
+                    if (!(term instanceof Rule))
+                        throw new IOException("Cannot write an image of term " + term);
+                    if (!ruleIds.containsKey(term) && isTerminal(term))
+                        ruleTerms[p][t] = ~intern(term.getName(), names, nameIds);
+                    else {
+                        if (!ruleIds.containsKey(term)){
+                            ruleIds.put((Rule) term, rules.size());
+                            rules.add((Rule) term);
+                        }
+                        ruleTerms[p][t] = ruleIds.get(term);
+                    }
+                }
+            }
+            terms.add(ruleTerms);
+            priorities.add(rulePriorities);
+        }
+        CompiledGrammar compiled = grammar.getRoot() == null ? null : grammar.compile();
+
+        //the body of the image first, so that it can be checked when it is read
+        ByteArrayOutputStream image = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(image);
+        out.writeByte(grammar instanceof AdvancedCFG ? ADVANCED : PLAIN);
+
+        out.writeInt(names.size());
+        for (String name : names){
+            out.writeInt(name.length());
+            out.writeChars(name);
+        }
+        out.writeInt(grammar.getRoot() == null ? -1 : nameIds.get(grammar.getRoot()));
+
+        out.writeInt(rules.size());
+        out.writeInt(grammar.nonterminals.size());
+        for (Rule rule : rules) out.writeInt(nameIds.get(rule.getName()));
+        out.writeInt(grammar.terminals.size());
+        for (String terminal : grammar.terminals) out.writeInt(nameIds.get(terminal));
+        for (int r = 0; r < rules.size(); r++){
+            out.writeInt(terms.get(r).length);
+            for (int p = 0; p < terms.get(r).length; p++){
+                out.writeInt(priorities.get(r)[p]);
+                out.writeInt(terms.get(r)[p].length);
+                for (int term : terms.get(r)[p]) out.writeInt(term);
+            }
+        }
+
+        if (grammar instanceof AdvancedCFG){
+            AdvancedCFG advanced = (AdvancedCFG) grammar;
+            out.writeInt(advanced.getFactory());
+            out.writeInt(advanced.getLoweredPriorities().size());
+            for (String lowered : advanced.getLoweredPriorities())
+                out.writeInt(nameIds.get(lowered));
+        }
+
+        if (compiled != null) compiled.write(out);
+
+        CRC32 check = new CRC32();
+        check.update(image.toByteArray());
+
+        File directory = file.getAbsoluteFile().getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("Cannot make directory " + directory);
+        File partial = File.createTempFile(file.getName(), ".part", directory);
+        try {
+            try (DataOutputStream header = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(partial)))){
+                header.writeInt(MAGIC);
+                header.writeInt(VERSION);
+                header.writeLong(hash(source));
+                header.writeLong(check.getValue());
+                image.writeTo(header);
+            }
+            try {
+                Files.move(partial.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            }catch (AtomicMoveNotSupportedException e){
+                Files.move(partial.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }finally {
+            Files.deleteIfExists(partial.toPath());
+        }
+    }
+
+    /** Returns a hash of the source of a CFG, which an image is kept for
+     * @param source the source of the CFG
+     * @return the hash of the source
+     */
+    public static long hash(String source){
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < source.length(); i++) hash = (hash ^ source.charAt(i)) * 0x100000001b3L;
+        return hash;
+    }
+
+    /** Returns the id of a name, giving it the next id if it is new
+     * @param name the name
+     * @param names the names, by id
+     * @param ids the ids of the names
+     * @return the id of the name
+     */
+    private static int intern(String name, ArrayList<String> names, HashMap<String,Integer> ids){
+        Integer id = ids.get(name);
+        if (id != null) return id;
+        ids.put(name, names.size());
+        names.add(name);
+        return names.size() - 1;
+    }
+
+    /** Returns true if a term is the Rule of a use of a terminal: a Rule with the token
+     * of its name as its only production
+     * @param term the term
+     * @return true if the term stands for a terminal
+     */
+    private static boolean isTerminal(Termable term){
+        if (!(term instanceof Rule) || ((Rule) term).productions.size() != 1) return false;
+        Production prod = ((Rule) term).productions.get(0);
+        return prod.size() == 1 && prod.get(0) instanceof CFGToken &&
+                prod.get(0).getName().equals(term.getName());
+    }
+
+}
@@ -16,12 +16,22 @@ import java.util.Iterator;
 public final class Production implements Iterable<Termable> {
 
     private final ArrayList<Termable> terms;
+    private final int priority;
 
     /** Produces a new Production from a set of rules
      * @param rules the input rules
      */
     public Production(Termable... rules){
+        this(0, rules);
+    }
+
+    /** Produces a new Production from a set of rules, with the given priority
+     * @param priority the priority of the production; 0 unless it has been lowered
+     * @param rules the input rules
+     */
+    public Production(int priority, Termable... rules){
         this.terms = new ArrayList<>(Arrays.asList(rules));
+        this.priority = priority;
     }
 
     /** Produces a new Production from a string (token id)
@@ -29,9 +39,24 @@ public final class Production implements Iterable<Termable> {
      */
     public Production(String rule){
         this.terms = new ArrayList<>();
+        this.priority = 0;
         terms.add(new CFGToken(rule,"no value",-1,-1));
     }
 
+    /** Returns the priority of the production. Where a rule derives the same tokens
+     * by more than one of its productions, the one with the highest priority is taken.
+     * @return the priority, 0 unless it has been lowered
+     */
+    public int getPriority(){return priority;}
+
+    /** Returns a copy of the production with the given priority
+     * @param priority the priority of the copy
+     * @return a production with the same terms
+     */
+    public Production withPriority(int priority){
+        return new Production(priority, terms.toArray(new Termable[terms.size()]));
+    }
+
     /** Returns the number of terms in the production.
      * @return the size of the production
      */
@@ -1,6 +1,7 @@
 package Compiler.Parser.LanguageSource;
 
 import Compiler.Parser.CFG.ContextFreeGrammar;
+import Compiler.Parser.CFG.GrammarCache;
 
 /**
  * Author: Matt
@@ -10,8 +11,10 @@ import Compiler.Parser.CFG.ContextFreeGrammar;
 public final class BantamGrammarSource{
 
     private final static String bantamgrammar = makeGrammar();
-    private final static ContextFreeGrammar bantamGrammarSource = new
-            ContextFreeGrammar(bantamgrammar);
+    /** The name of the image the grammar is kept in once built (see GrammarCache) **/
+    private final static String bantamImage = "BantamGrammar";
+    private final static ContextFreeGrammar bantamGrammarSource = GrammarCache.load(
+            bantamImage, bantamgrammar, () -> new ContextFreeGrammar(bantamgrammar));
 
     /** Returns a CFG encoding the Bantam Java Grammar
      * @return Bantam CFG
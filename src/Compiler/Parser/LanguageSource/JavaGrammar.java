@@ -2,6 +2,7 @@ package Compiler.Parser.LanguageSource;
 
 import Compiler.Parser.CFG.AdvancedCFG;
 import Compiler.Parser.CFG.ContextFreeGrammar;
+import Compiler.Parser.CFG.GrammarCache;
 import Compiler.Visitor.Java7.ImportVisitor;
 import IO.IOManager;
 
@@ -19,12 +20,15 @@ import java.util.List;
 public class JavaGrammar {
 
     private final static String javagrammar = makeGrammar();
-    private final static AdvancedCFG javaGrammarSource = new
-            AdvancedCFG(javagrammar);
+    //the priority lowered once the grammar is built, which is part of its source too
+    private final static String loweredRule = "BlockStatement", loweredProduction = "Statement";
+    private final static int loweredMagnitude = 1;
 
-    static {
-        javaGrammarSource.lowerPriority("BlockStatement","Statement",1);
-    }
+    /** The name of the image the grammar is kept in once built (see GrammarCache) **/
+    private final static String javaImage = "JavaGrammar";
+
+    private final static AdvancedCFG javaGrammarSource = (AdvancedCFG) GrammarCache.load(
+            javaImage, getJavaSource(), JavaGrammar::buildJavaGrammar);
 
     //FIXME: Streamline idea: Factory repeated assemblies
 
@@ -35,6 +39,24 @@ public class JavaGrammar {
         return javaGrammarSource;
     }
 
+    /** Returns the source of the Java grammar, which its image is kept for: the CFG string
+     * and the priority lowered on it
+     * @return the source of the Java CFG
+     */
+    public static String getJavaSource(){
+        return javagrammar + "|lowerPriority " + loweredRule + " " + loweredProduction +
+                " " + loweredMagnitude;
+    }
+
+    /** Builds the Java grammar from its source, without reading or writing its image
+     * @return a new Java CFG
+     */
+    public static AdvancedCFG buildJavaGrammar(){
+        AdvancedCFG grammar = new AdvancedCFG(javagrammar);
+        grammar.lowerPriority(loweredRule, loweredProduction, loweredMagnitude);
+        return grammar;
+    }
+
     /** Returns a CFG String for the Java 7 Langauge **/
     private static String makeGrammar(){
 
@@ -386,12 +408,12 @@ public class JavaGrammar {
                 "BlockStatements->BlockStatementsAssembly|" +
                 "BlockStatementsAssembly->BlockStatement|" +
                 "BlockStatementsAssembly->BlockStatement BlockStatementsAssembly|"
-        // BlockStatement : (COLON)
-        + "BlockStatement->LocalVariableDeclarationStatement|" +
-                "BlockStatement->ClassOrInterfaceDeclaration|" +
+        // BlockStatement : (COLON); the order the productions are tried in, with
+        // Statement lowered below LocalVariableDeclarationStatement (see loweredRule)
+        + "BlockStatement->ClassOrInterfaceDeclaration|" +
+                "BlockStatement->Identifier COLON Statement|" +
                 "BlockStatement->Statement|" +
-//                "BlockStatement->Statement|" +
-                "BlockStatement->Identifier COLON Statement|"
+                "BlockStatement->LocalVariableDeclarationStatement|"
         //LocalVariableDeclarationStatement
         + "LocalVariableDeclarationStatement->Type VariableDeclarators SEMI|" +
                 "LocalVariableDeclarationStatement->LocalVariableDeclarationStatementAssembly " +
@@ -0,0 +1,20 @@
+package Compiler.Parser.Matcher;
+
+/**
+ * A flag by which one thread asks a Matcher running on another to stop (see
+ * ParseBudget). The Matcher looks at it before each row it processes, so it stops soon
+ * after, and cleanly; nothing is interrupted. A token stays cancelled once it is.
+ */
+public final class CancellationToken {
+
+    private volatile boolean cancelled = false;
+
+    /** Asks the Matchers watching the token to stop **/
+    public void cancel(){cancelled = true;}
+
+    /** Returns true if the token was cancelled
+     * @return true if the Matchers watching the token should stop
+     */
+    public boolean isCancelled(){return cancelled;}
+
+}
@@ -2,6 +2,7 @@ package Compiler.Parser.Matcher;
 
 import Compiler.Parser.CFG.*;
 import Compiler.Scanner.LexerToken;
+import Compiler.Scanner.TokenBuffer;
 
 import java.util.ArrayList;
 
@@ -14,18 +15,110 @@ import java.util.ArrayList;
  */
 public final class Chart extends ArrayList<ChartRow>{
 
+    //the id of the next row added (see ChartRow.getId)
+    private int nextId;
+
+    /** Constructs a new Chart with no input yet, to add rows to as tokens come in **/
+    public Chart(){
+        super();
+
+        //add null state
+        add(new ChartRow(0,(LexerToken) null));
+        nextId = 1;
+    }
+
+    /** Constructs a new Chart that shares the first rows of an earlier chart, for
+     * reparsing an edited input; rows added to it get ids the earlier chart has not used
+     * @param previous the earlier chart
+     * @param shared the number of rows to share
+     */
+    Chart(Chart previous, int shared){
+        super(previous.subList(0, shared));
+        nextId = previous.nextId;
+    }
+
     /** Constructs a new Chart from an input of CFGTokens
      * @param lexerTokens the input for the chart
      */
     public Chart(LexerToken[] lexerTokens){
-        super();
+        this();
+
+        //add CFGTokens
+        for (LexerToken lexerToken : lexerTokens) addRow(lexerToken);
+    }
+
+    /** Constructs a new Chart from a buffer of tokens. Whitespace and comments in the
+     * buffer are not part of the input.
+     * @param tokens the input for the chart
+     */
+    public Chart(TokenBuffer tokens){
+        super(tokens.size() + 1);
 
         //add null state
-        add(new ChartRow(0,null));
+        add(new ChartRow(0,(CFGToken) null));
 
         //add CFGTokens
-        for (int i = 0; i < lexerTokens.length; i++){
-            add( new ChartRow(i+1, lexerTokens[i]) );
+        for (int i = 0; i < tokens.size(); i++){
+            LexerToken.TokenIds id = tokens.getIds(i);
+            if (id == LexerToken.TokenIds.NULL || id == LexerToken.TokenIds.COMMENT) continue;
+            add( new ChartRow(size(), new CFGToken(id.toString(), tokens.getValue(i),
+                    tokens.getLineNum(i), tokens.getColNum(i))) );
+        }
+        nextId = size();
+    }
+
+    /** Adds a row for the next token of the input
+     * @param lexerToken the token
+     * @return the new row
+     */
+    public ChartRow addRow(LexerToken lexerToken){
+        ChartRow row = new ChartRow(size(), nextId++, lexerToken);
+        add(row);
+        return row;
+    }
+
+    /** Adds a row for a token that is not in the input, to repair it (see Matcher)
+     * @param token the token
+     * @return the new row
+     */
+    ChartRow addRow(CFGToken token){
+        ChartRow row = new ChartRow(size(), nextId++, token);
+        add(row);
+        return row;
+    }
+
+    /** Removes the row of a token skipped to repair the input (see Matcher), renumbering
+     * the rows after it
+     * @param index the index of the row
+     */
+    void removeRow(int index){
+        remove(index);
+        for (int i = index; i < size(); i++) get(i).setIndex(i);
+    }
+
+    /** Replaces the row at the given index with a reopened copy of it (see
+     * ChartRow.reopen), to process it again
+     * @param index the index of the row
+     * @return the reopened row
+     */
+    ChartRow reopenRow(int index){
+        ChartRow row = get(index).reopen();
+        set(index, row);
+        return row;
+    }
+
+    /** Replaces the rows from the given index on with the rows of an earlier chart from
+     * another index on, renumbering them. The earlier chart must be the one this chart
+     * was made from (see Chart(Chart, int)), so the ids of the rows stay unique.
+     * @param index the index of the first row replaced
+     * @param previous the earlier chart
+     * @param from the index in the earlier chart of the first row taken over
+     */
+    void graft(int index, Chart previous, int from){
+        subList(index, size()).clear();
+        for (ChartRow row : previous.subList(from, previous.size())){
+            row.setIndex(size());
+            add(row);
         }
     }
 
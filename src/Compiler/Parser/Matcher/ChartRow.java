@@ -1,6 +1,7 @@
 package Compiler.Parser.Matcher;
 
 import Compiler.Parser.CFG.CFGToken;
+import Compiler.Parser.CFG.CompiledGrammar;
 import Compiler.Scanner.LexerToken;
 
 import java.util.*;
@@ -8,29 +9,93 @@ import java.util.*;
 /**
  * Represents one column in a Chart, a standard State storage unit.
  * Not externally accessible.
+ * <br>The row keeps the keys of its states in a table of longs, so checking
+ * whether a state is new takes no hashing of objects. It also chains together the
+ * states waiting on each symbol, so a completion visits only the states it advances,
+ * and marks the symbols already predicted in it, so each rule is predicted once.
+ * For the Matcher's right recursion shortcut, it remembers where the right recursion
+ * on each symbol through the row ends.
+ * <br>Besides its index, a row has an id that is unique within its chart and never
+ * changes; the keys of states name their starting rows by it, so rows a reparse takes
+ * over from an earlier chart keep their keys when they are renumbered.
+ * <br>A Matcher that keeps no forest may compact a row once it is processed (see
+ * compact), keeping only the states completion goes back to, and release it altogether
+ * once no later state can reach it (see release).
  * Created by Matt Levine on 3/13/14.
  * @author Matthew Levine
  */
 public class ChartRow implements Iterable<State> {
 
-    private final int index;
-    private final CFGToken CFGToken;
+    private int index;
+    private final int id;
+    private CFGToken CFGToken;
     private final ArrayList<State> states;
-    private final HashSet<State> unique;
+    //the keys of the states (see State.getKey) and their positions, in an
+    //open-addressed table
+    private long[] unique = EMPTY;
+    private int[] positions = NONE;
+    private int uniqueCount = 0;
+
+    //for each state, the index of the next state waiting on the same symbol
+    private int[] nextWaiting = NONE;
+    //the first and last states waiting on each symbol, in an open-addressed table
+    private int[] waitSymbols = NONE, firstWaiting = NONE, lastWaiting = NONE;
+    private int waitCount = 0;
+    //for each symbol in the table, the top of its right recursion through this row, and
+    //whether it has been looked for (see Matcher.leoTop)
+    private State[] leoTops = new State[0];
+    private boolean[] leoKnown = new boolean[0];
+    //the Matcher yet to add the states of the right recursions it skipped to the row
+    private Matcher skippedBy = null;
+    //the symbols predicted in the row, and those completed from it, one bit each
+    private long[] predicted = EMPTY, completedHere = EMPTY;
+
+    private static final long[] EMPTY = new long[0];
+    private static final int[] NONE = new int[0];
+    private static final long FREE = -1;
 
     /** Constructs a new row with a given index and CFGToken definition
      * @param index the index of the row
      * @param lexerToken the token defining the row
      */
     public ChartRow(int index, LexerToken lexerToken){
+        this(index, index, lexerToken);
+    }
+
+    /** Constructs a new row with a given index, id and CFGToken definition
+     * @param index the index of the row
+     * @param id the id of the row, unique within its chart
+     * @param lexerToken the token defining the row
+     */
+    ChartRow(int index, int id, LexerToken lexerToken){
         this.index = index;
+        this.id = id;
         if (lexerToken != null)
             this.CFGToken = new CFGToken(lexerToken.getIds().toString(),
                 lexerToken.getValue(),lexerToken.getLineNum(),lexerToken.getColNum());
         else
             this.CFGToken = null;
         this.states = new ArrayList<>();
-        this.unique = new HashSet<>();
+    }
+
+    /** Constructs a new row with a given index and CFGToken
+     * @param index the index of the row
+     * @param token the token defining the row
+     */
+    public ChartRow(int index, CFGToken token){
+        this(index, index, token);
+    }
+
+    /** Constructs a new row with a given index, id and CFGToken
+     * @param index the index of the row
+     * @param id the id of the row, unique within its chart
+     * @param token the token defining the row
+     */
+    ChartRow(int index, int id, CFGToken token){
+        this.index = index;
+        this.id = id;
+        this.CFGToken = token;
+        this.states = new ArrayList<>();
     }
 
     /** Returns the size of the row.
@@ -61,18 +126,494 @@ public class ChartRow implements Iterable<State> {
      * @return operational success (violates return-OR-act principle for convenience)
      */
     public boolean add(State state){
-        if (!unique.contains(state)){
-            unique.add(state);
-            state.setEnd_chartRow(this);
+        if (!insert(state.getKey(), states.size())) return false;
+        state.setEnd_chartRow(this);
+        states.add(state);
+        link(states.size() - 1);
+        return true;
+    }
+
+    /** Adds a state whose dot was moved on from another one, as add does, and records
+     * the derivation on it, or on the equal state the row already holds
+     * @param state the state being introduced to the row
+     * @param predecessor the state before the dot was moved
+     * @param child the completed state of the term the dot was moved over
+     * @return true if the state was new to the row
+     */
+    boolean add(State state, State predecessor, State child){
+        boolean added = add(state);
+        (added ? state : states.get(indexOf(state))).derive(predecessor, child);
+        return added;
+    }
+
+    /** Returns a row in place of this one, with the same index, id and token, that holds
+     * only the states the row started out with before it was processed: those scanned
+     * into it, or the start state of the first row. The states are moved to the new
+     * row, with their derivations, so it can be processed again.
+     * @return the new row
+     */
+    ChartRow reopen(){
+        ChartRow row = new ChartRow(index, id, CFGToken);
+        for (int i = 0; i < states.size() && (i == 0 && index == 0 || states.get(i).scanned()); i++)
+            row.add(states.get(i));
+        return row;
+    }
+
+    /** Drops the states of a processed row that later rows never go back to, for a
+     * Matcher that keeps no forest: only the states waiting on a rule, which completion
+     * advances, are kept, in their order, with their chains and the tops of right
+     * recursions found so far. The table of keys and the marks of predicted and
+     * completed rules are released, so no state may be added to the row or looked up
+     * in it afterwards.
+     * @return the number of states kept
+     */
+    int compact(){
+        //the new position of each state, or -1 if it is dropped; chained states are kept
+        int[] moved = new int[states.size()];
+        int kept = 0;
+        for (int i = 0; i < states.size(); i++){
+            State state = states.get(i);
+            if (state.completed() || state.nextTerm() < 0) moved[i] = -1;
+            else {
+                moved[i] = kept;
+                states.set(kept++, state);
+            }
+        }
+        states.subList(kept, states.size()).clear();
+        states.trimToSize();
+        int[] next = new int[kept];
+        for (int i = 0; i < moved.length; i++)
+            if (moved[i] != -1) next[moved[i]] = nextWaiting[i] == -1 ? -1 : moved[nextWaiting[i]];
+        nextWaiting = next;
+        for (int slot = 0; slot < waitSymbols.length; slot++){
+            if (waitSymbols[slot] == -1) continue;
+            firstWaiting[slot] = moved[firstWaiting[slot]];
+            lastWaiting[slot] = moved[lastWaiting[slot]];
+        }
+        unique = EMPTY;
+        positions = NONE;
+        uniqueCount = 0;
+        predicted = completedHere = EMPTY;
+        return kept;
+    }
+
+    /** Drops all the states of a processed row, once no state of a later row can go
+     * back to it. Only the index, id and token of the row are left.
+     */
+    void release(){
+        states.clear();
+        states.trimToSize();
+        unique = EMPTY;
+        positions = NONE;
+        uniqueCount = 0;
+        nextWaiting = waitSymbols = firstWaiting = lastWaiting = NONE;
+        leoTops = new State[0];
+        leoKnown = new boolean[0];
+        waitCount = 0;
+        predicted = completedHere = EMPTY;
+    }
+
+    /** Returns true if the row, of a reparsed chart, holds the states of a row of the
+     * earlier chart in the same order: states of the same items at each position,
+     * starting at the same row shared by the two charts, or each at its own row. A
+     * completed state, which later rows never go back to, may instead start at rows
+     * of each chart that are not shared.
+     * @param other the row of the earlier chart
+     * @param shared the number of rows at the start of the charts that they share
+     * @return true if the rows are alike
+     */
+    boolean isLike(ChartRow other, int shared){
+        if (states.size() != other.states.size()) return false;
+        for (int i = 0; i < states.size(); i++){
+            State mine = states.get(i), theirs = other.states.get(i);
+            if (mine.getItem() != theirs.getItem()) return false;
+            ChartRow start = mine.getStart_chartRow(), otherStart = theirs.getStart_chartRow();
+            if (start == this ? otherStart == other : start == otherStart) continue;
+            if (!mine.completed() || start == this || otherStart == other ||
+                    start.getIndex() < shared || otherStart.getIndex() < shared) return false;
+        }
+        return true;
+    }
+
+    /** Returns true if the states of the row, of a reparsed chart, that are not completed
+     * are those of a row of the earlier chart, as isLike compares them. Rows whose right
+     * recursions were skipped (see Matcher.leoTop) are only alike if this holds, for
+     * the states they skipped are all completed.
+     * @param other the row of the earlier chart
+     * @return true if the states not completed are alike
+     */
+    boolean waitsLike(ChartRow other){
+        int i = 0, j = 0;
+        while (true){
+            while (i < states.size() && states.get(i).completed()) i++;
+            while (j < other.states.size() && other.states.get(j).completed()) j++;
+            if (i == states.size() || j == other.states.size())
+                return i == states.size() && j == other.states.size();
+            State mine = states.get(i++), theirs = other.states.get(j++);
+            if (mine.getItem() != theirs.getItem()) return false;
+            ChartRow start = mine.getStart_chartRow(), otherStart = theirs.getStart_chartRow();
+            if (start == this ? otherStart != other : start != otherStart) return false;
+        }
+    }
+
+    /** Makes the row, of an earlier chart, stand in for a row like it of a reparsed
+     * chart (see isLike): its states take on the derivations of the other row's, and
+     * its completed states that start at rows the charts do not share are replaced by
+     * the other row's, which start at the reparsed chart's rows
+     * @param other the row of the reparsed chart
+     */
+    void adopt(ChartRow other){
+        for (int i = 0; i < states.size(); i++){
+            State theirs = other.states.get(i);
+            if (states.get(i).getStart_chartRow() == this ||
+                    states.get(i).getStart_chartRow() == theirs.getStart_chartRow()) continue;
+            theirs.setEnd_chartRow(this);
+            states.set(i, theirs);
+        }
+        Arrays.fill(unique, FREE);
+        uniqueCount = 0;
+        for (int i = 0; i < states.size(); i++) insert(states.get(i).getKey(), i);
+        for (int i = 0; i < states.size(); i++){
+            State mine = states.get(i);
+            ArrayList<PackedNode> derivations = new ArrayList<>();
+            for (PackedNode derivation = other.states.get(i).getDerivations(); derivation != null;
+                 derivation = derivation.getNext())
+                derivations.add(derivation);
+            mine.clearDerivations();
+            for (int j = derivations.size() - 1; j >= 0; j--)
+                mine.derive(standIn(other, derivations.get(j).getPredecessor()),
+                        standIn(other, derivations.get(j).getChild()));
+        }
+    }
+
+    /** Returns the state of this row that stands in for a state of the other row (see
+     * adopt), or the given state if it is not of the other row
+     * @param other the row of the reparsed chart
+     * @param state a state
+     * @return the state standing in for it
+     */
+    private State standIn(ChartRow other, State state){
+        if (state == null || state.getEnd_chartRow() != other) return state;
+        return states.get(other.indexOf(state));
+    }
+
+    /** Returns the first state of the row that waits on the given symbol, i.e. whose
+     * next term is the rule of the symbol
+     * @param symbol the symbol id of a rule
+     * @return the position of the state in the row, or -1 if no state waits on it
+     */
+    int getFirstWaiting(int symbol){
+        int slot = findWaiting(symbol);
+        return waitSymbols.length == 0 || waitSymbols[slot] == -1 ? -1 : firstWaiting[slot];
+    }
+
+    /** Returns the next state of the row that waits on the same symbol as the given one.
+     * States added to the row later on are included.
+     * @param position the position of a waiting state in the row
+     * @return the position of the next such state, or -1 if there is none (yet)
+     */
+    int getNextWaiting(int position){return nextWaiting[position];}
+
+    /** Returns true if the top of the right recursion on the given symbol through this
+     * row has been recorded
+     * @param symbol the symbol id of a rule that states of the row wait on
+     * @return true if the top is known
+     */
+    boolean isLeoTopKnown(int symbol){
+        int slot = findWaiting(symbol);
+        return waitSymbols.length > 0 && waitSymbols[slot] == symbol && leoKnown[slot];
+    }
+
+    /** Returns the recorded top of the right recursion on the given symbol
+     * @param symbol the symbol id of a rule that states of the row wait on
+     * @return the waiting state at the top, or null if there is no recursion to skip
+     */
+    State getLeoTop(int symbol){
+        int slot = findWaiting(symbol);
+        return waitSymbols.length > 0 && waitSymbols[slot] == symbol ? leoTops[slot] : null;
+    }
+
+    /** Records the top of the right recursion on the given symbol through this row
+     * @param symbol the symbol id of a rule that states of the row wait on
+     * @param top the waiting state at the top, or null if there is no recursion to skip
+     */
+    void setLeoTop(int symbol, State top){
+        int slot = findWaiting(symbol);
+        leoTops[slot] = top;
+        leoKnown[slot] = true;
+    }
+
+    /** Inserts states into the row, each group right before the state it is mapped to.
+     * States already in the row are left out.
+     * @param groups the states to insert, by the state of the row they precede
+     */
+    void insertBefore(Map<State,List<State>> groups){
+        for (List<State> group : groups.values()) group.removeIf(state -> indexOf(state) != -1);
+        ArrayList<State> old = new ArrayList<>(states);
+        states.clear();
+        Arrays.fill(unique, FREE);
+        uniqueCount = 0;
+        for (State state : old){
+            List<State> group = groups.get(state);
+            if (group != null){
+                for (State inserted : group){
+                    if (!insert(inserted.getKey(), states.size())) continue;
+                    inserted.setEnd_chartRow(this);
+                    states.add(inserted);
+                }
+            }
+            insert(state.getKey(), states.size());
             states.add(state);
-            return true;
+        }
+        relink();
+    }
+
+    /** Returns the position in the row of the state equal to the given one
+     * @param state a state
+     * @return the position of the equal state, or -1 if the row has none
+     */
+    public int indexOf(State state){return indexOf(state.getKey());}
+
+    /** Returns the position in the row of the state with the given key
+     * @param key the key of a state (see State.key)
+     * @return the position of the state, or -1 if the row has none
+     */
+    private int indexOf(long key){
+        if (uniqueCount == 0) return -1;
+        int mask = unique.length - 1;
+        for (int slot = hash(key) & mask; unique[slot] != FREE; slot = (slot + 1) & mask)
+            if (unique[slot] == key) return positions[slot];
+        return -1;
+    }
+
+    /** Returns true if the rule of a completed state of this row is also completed here,
+     * over the same tokens, by a production of higher priority, ahead of a given state
+     * (see Production.getPriority)
+     * @param state a completed state of the row
+     * @param before the state to look ahead of; the whole row is looked at if it is
+     *               not in the row
+     * @return true if the row holds a completion of higher priority
+     */
+    public boolean isOutranked(State state, State before){
+        CompiledGrammar grammar = state.getGrammar();
+        int production = state.getProductionId();
+        int start = state.getStart_chartRow().getId();
+        for (int p : grammar.getProductions(grammar.getLeft(production))){
+            if (grammar.getPriority(p) <= grammar.getPriority(production)) continue;
+            if (skippedBy != null){
+                Matcher matcher = skippedBy;
+                skippedBy = null;
+                matcher.expandLeoLinks(this);
+            }
+            int end = before == null ? -1 : indexOf(before);
+            if (end < 0 || states.get(end) != before) end = states.size();
+            int at = indexOf(State.key(grammar.getItem(p, grammar.getTerms(p).length), start));
+            if (at >= 0 && at < end) return true;
         }
         return false;
     }
 
+    /** Returns the first state of the row, in row order, that completes the given rule
+     * within the row, i.e. derives the empty string here
+     * @param grammar the compiled grammar of the row's states
+     * @param symbol the symbol id of a rule
+     * @return the completed state, or null if the row has none
+     */
+    State getCompletedHere(CompiledGrammar grammar, int symbol){
+        int first = -1;
+        for (int p : grammar.getProductions(symbol)){
+            int at = indexOf(State.key(grammar.getItem(p, grammar.getTerms(p).length), id));
+            if (at >= 0 && (first < 0 || at < first)) first = at;
+        }
+        return first < 0 ? null : states.get(first);
+    }
+
+    /** Marks the row as holding right recursions a Matcher skipped, whose states the
+     * Matcher adds before the row is looked through for a completion of higher priority
+     * @param matcher the Matcher, or null once it has added them
+     */
+    void setSkippedBy(Matcher matcher){skippedBy = matcher;}
+
+    /** Marks the given symbol as predicted in this row
+     * @param symbol the symbol id of a rule
+     * @return true if the symbol had not been predicted in this row before
+     */
+    boolean markPredicted(int symbol){
+        if (isSet(predicted, symbol)) return false;
+        predicted = set(predicted, symbol);
+        return true;
+    }
+
+    /** Marks the given symbol as completed within this row, i.e. as having derived the
+     * empty string here
+     * @param symbol the symbol id of a rule
+     */
+    void markCompletedHere(int symbol){completedHere = set(completedHere, symbol);}
+
+    /** Returns true if the given symbol has been completed within this row
+     * @param symbol the symbol id of a rule
+     * @return true if the symbol has derived the empty string here
+     */
+    boolean isCompletedHere(int symbol){return isSet(completedHere, symbol);}
+
+    /** Returns true if the bit of the given symbol is set
+     * @param bits the bits
+     * @param symbol the symbol id
+     * @return true if the bit is set
+     */
+    private static boolean isSet(long[] bits, int symbol){
+        int word = symbol >>> 6;
+        return word < bits.length && (bits[word] & (1L << symbol)) != 0;
+    }
+
+    /** Sets the bit of the given symbol, growing the bits if needed
+     * @param bits the bits
+     * @param symbol the symbol id
+     * @return the bits
+     */
+    private static long[] set(long[] bits, int symbol){
+        int word = symbol >>> 6;
+        if (word >= bits.length) bits = Arrays.copyOf(bits, Math.max(word + 1, 2 * bits.length));
+        bits[word] |= 1L << symbol;
+        return bits;
+    }
+
+    /** Returns the index of the row in its chart
+     * @return the index of the row
+     */
+    public int getIndex(){return index;}
+
+    /** Moves the row to another index, when the chart it is in is spliced
+     * @param index the new index of the row
+     */
+    void setIndex(int index){this.index = index;}
+
+    /** Gives the row the token at its place in an edited input, which differs from its
+     * own only in its position, when the chart of the input is reparsed. The states
+     * scanned into the row keep the token they scanned.
+     * @param token the token at the row's place in the edited input
+     */
+    void setCFGToken(CFGToken token){CFGToken = token;}
+
+    /** Returns the id of the row, unique within its chart (see State.getKey)
+     * @return the id of the row
+     */
+    int getId(){return id;}
+
+    /** Adds a key to the table of keys, unless it is there already
+     * @param key the key of a state
+     * @param position the position of the state in the row
+     * @return true if the key was added
+     */
+    private boolean insert(long key, int position){
+        if (2 * (uniqueCount + 1) > unique.length) rehash(Math.max(16, unique.length * 2));
+        int mask = unique.length - 1, slot = hash(key) & mask;
+        for (; unique[slot] != FREE; slot = (slot + 1) & mask)
+            if (unique[slot] == key) return false;
+        unique[slot] = key;
+        positions[slot] = position;
+        uniqueCount++;
+        return true;
+    }
+
+    /** Moves the keys to a table of the given size
+     * @param size the new size of the table, a power of two
+     */
+    private void rehash(int size){
+        long[] old = unique;
+        int[] oldPositions = positions;
+        unique = new long[size];
+        positions = new int[size];
+        Arrays.fill(unique, FREE);
+        for (int i = 0; i < old.length; i++){
+            if (old[i] == FREE) continue;
+            int slot = hash(old[i]) & (size - 1);
+            while (unique[slot] != FREE) slot = (slot + 1) & (size - 1);
+            unique[slot] = old[i];
+            positions[slot] = oldPositions[i];
+        }
+    }
+
+    /** Spreads the bits of a key
+     * @param key the key
+     * @return the hash of the key
+     */
+    private static int hash(long key){
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
     /** Reverses the states in the row **/
     public void reverse(){
         Collections.reverse(states);
+        relink();
+    }
+
+    /** Chains the waiting states anew, after the states have moved **/
+    private void relink(){
+        Arrays.fill(waitSymbols, -1);
+        Arrays.fill(leoTops, null);
+        Arrays.fill(leoKnown, false);
+        waitCount = 0;
+        for (int i = 0; i < states.size(); i++) link(i);
+    }
+
+    /** Chains the state at the given position to the states waiting on the same symbol
+     * @param position the position of the state in the row
+     */
+    private void link(int position){
+        if (position >= nextWaiting.length)
+            nextWaiting = Arrays.copyOf(nextWaiting, Math.max(16, 2 * nextWaiting.length));
+        nextWaiting[position] = -1;
+        State state = states.get(position);
+        if (state.completed()) return;
+        int symbol = state.nextTerm();
+        if (symbol < 0) return; //waits on a token, not a rule
+
+        if (2 * (waitCount + 1) > waitSymbols.length) rehashWaiting(Math.max(16, 2 * waitSymbols.length));
+        int slot = findWaiting(symbol);
+        if (waitSymbols[slot] == -1){
+            waitSymbols[slot] = symbol;
+            firstWaiting[slot] = position;
+            waitCount++;
+        }else nextWaiting[lastWaiting[slot]] = position;
+        lastWaiting[slot] = position;
+    }
+
+    /** Returns the slot of the given symbol in the table of waiting states, or the free
+     * slot where it belongs
+     * @param symbol the symbol id
+     * @return the slot of the symbol
+     */
+    private int findWaiting(int symbol){
+        if (waitSymbols.length == 0) return 0;
+        int mask = waitSymbols.length - 1, slot = (symbol * 0x9E3779B9 >>> 16) & mask;
+        while (waitSymbols[slot] != -1 && waitSymbols[slot] != symbol) slot = (slot + 1) & mask;
+        return slot;
+    }
+
+    /** Moves the table of waiting states to a table of the given size
+     * @param size the new size of the table, a power of two
+     */
+    private void rehashWaiting(int size){
+        int[] symbols = waitSymbols, firsts = firstWaiting, lasts = lastWaiting;
+        State[] tops = leoTops;
+        boolean[] known = leoKnown;
+        waitSymbols = new int[size];
+        firstWaiting = new int[size];
+        lastWaiting = new int[size];
+        leoTops = new State[size];
+        leoKnown = new boolean[size];
+        Arrays.fill(waitSymbols, -1);
+        for (int i = 0; i < symbols.length; i++){
+            if (symbols[i] == -1) continue;
+            int slot = findWaiting(symbols[i]);
+            waitSymbols[slot] = symbols[i];
+            firstWaiting[slot] = firsts[i];
+            lastWaiting[slot] = lasts[i];
+            leoTops[slot] = tops[i];
+            leoKnown[slot] = known[i];
+        }
     }
 
     /** Adds all states to a given collection
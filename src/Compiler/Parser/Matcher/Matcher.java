@@ -3,10 +3,54 @@ package Compiler.Parser.Matcher;
 import Compiler.Parser.Builder.*;
 import Compiler.Parser.CFG.*;
 import Compiler.Scanner.LexerToken;
+import Compiler.Scanner.TokenBuffer;
 import Neuralizer.IO.NeuralLog;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
 /**
- * Verifies that an input of tokens is accepted by the given CFG. A Matcher is immutable.
+ * Verifies that an input of tokens is accepted by the given CFG. A Matcher given its
+ * input up front is immutable.
+ * <br>A Matcher may also be fed its input a token at a time (see feed and finish), so
+ * it can parse tokens as a scanner produces them, on another thread. Rows are added
+ * to the chart as tokens arrive, and a row is processed as soon as the token after it
+ * is known; the first token no derivation can reach is reported when it is fed, not
+ * at the end of the input. Feeding a Matcher is not thread-safe.
+ * <br>A Matcher may also reparse an edited input, taking over the chart of the Matcher
+ * of the input before the edit. The rows before the first changed token are shared,
+ * since a row depends only on the tokens up to the one after it. Rows are computed
+ * anew from there until, past the edit, one comes out like the old row at its place
+ * (see ChartRow.isLike) and none of its waiting states started within the edit; the
+ * rest of the old chart is then the rest of the new one, and is grafted back in. The
+ * tokens around the edit need only keep their names and values; the rows shared or
+ * grafted in take on their new positions, so an edit that adds or removes lines does
+ * not reparse the rest of the input. A Builder that supports it (see Builder.rebuild)
+ * reuses what it built for the rows left alone.
+ * <br>A Matcher in recovery mode does not stop at a bad token. A token no state scans
+ * is skipped, and the row before it is processed again against the token after it
+ * (see ChartRow.reopen); at the end of the input, the tokens of the shortest way to
+ * complete a derivation are put in one at a time. Each skipped run of tokens and each
+ * token put in is an error (see getErrors); the input does not match, but the Builder
+ * is still passed a derivation of the repaired input. Skipping costs one row processed
+ * again per token, and completing the input one row per token put in.
+ * <br>A Matcher may be held to a budget (see ParseBudget): before each row, it checks
+ * the states and rows of its chart, the time it has taken and whether it was
+ * cancelled, and aborts if the budget is spent, giving the reason (see
+ * getAbortReason). An aborted Matcher does not match, and passes nothing to its
+ * Builder.
+ * <br>A Matcher with no Builder that is not given an earlier Matcher to reparse, and
+ * does not recover, only matches, so it compacts its chart as it goes: a processed row
+ * keeps only its states waiting on a rule (see ChartRow.compact), and once the states
+ * kept have doubled, the rows no state from the next row on can go back to through its
+ * starting rows are released (see ChartRow.release). The chart then grows with the
+ * states still live rather than with all the states of the input. A compacted chart
+ * cannot be reparsed; a reparse given its Matcher parses anew.
  *
  * The Matcher uses the Earley parsing algorithm; it employs a chart and state system
  * referring to a procedure of predicting, scanning, and completing (Earley, Jay: "An Efficient
@@ -20,6 +64,12 @@ import Neuralizer.IO.NeuralLog;
  * to a builder, though most builders would probably only require one. The Matcher should
  * not pass on an empty list to a Builder (null indicates failure), but don't count
  * on it.
+ * <br>For a Builder, each state moved on by completion keeps the state it was moved
+ * from and the completed state it was moved over (see PackedNode), so the chart holds
+ * a shared packed parse forest of the input and a tree is read off it directly. The
+ * states a right recursion shortcut skipped (see leoTop) are only added to their row
+ * once a Builder reads the derivations of the state at its top, so a tree takes time
+ * linear in its size rather than in all the ways the recursion could have ended.
  *
  * The algorithm should operate in O(n^3) time to the number of CFG rules and linearly
  * to the number of tokens. I say should because constructing the thing was tough enough
@@ -43,9 +93,44 @@ public final class Matcher {
     //Matcher; if we wanted to check if it matches more than once, this might
     //make that more efficient (though not really)
 
-    private final boolean matches;
-    private ChartRow lastRow;
+    private boolean matches = false;
     private CFGToken badToken = null;
+    //the input so far, and whether it has ended
+    private final CompiledGrammar grammar;
+    private final Chart chart;
+    private final Builder builder;
+    private boolean finished = false;
+    //whether the Builder was passed a derivation
+    private boolean built = false;
+    //the number of rows processed, whether another Matcher took over the chart, and the
+    //first and last rows a reparse changed, if any
+    private int processed = 0;
+    private boolean reparsed = false;
+    private int firstChanged = -1, lastChanged = -1;
+    //the completions that skipped a right recursion, by the row of the completion, until
+    //a Builder reads the derivations of the state at their top (see expandLeoLinks)
+    private final IdentityHashMap<ChartRow,ArrayList<LeoLink>> leoLinks = new IdentityHashMap<>();
+    //whether predictions look at the next token, and the number of states in the chart
+    private final boolean lookahead;
+    private int stateCount = 0;
+    //whether the derivations of the states are recorded, for a Builder
+    private final boolean forest;
+    //whether bad tokens are recovered from, the errors recovered from, and whether the
+    //last token was skipped
+    private final boolean recover;
+    private final ArrayList<SyntaxError> errors = new ArrayList<>();
+    private boolean skipping = false;
+    //the budget the Matcher is held to, when it was constructed, and why it aborted, if
+    //it did
+    private final ParseBudget budget;
+    private final long started = System.nanoTime();
+    private ParseBudget.Reason abortReason = null;
+    //whether processed rows are compacted, and the number of states they kept, in all
+    //and after the last rows were released
+    private final boolean compact;
+    private long kept = 0, live = 0;
+    //what no derivation costs when repairing the input
+    private static final long NO_COST = Long.MAX_VALUE / 4;
 
     /** Constructs a new Matcher from a set of CFGTokens and an input rule and
      * attempts to derive the CFGTokens from the rule
@@ -53,7 +138,19 @@ public final class Matcher {
      * @param lexerTokens set of input
      */
     public Matcher(ContextFreeGrammar cfg, LexerToken[] lexerTokens){
-        matches = parse(cfg.getStartRule(), lexerTokens) != null;
+        this(cfg, new Chart(lexerTokens), null);
+        matchAll();
+    }
+
+    /** Constructs a new Matcher from a buffer of tokens and an input rule and
+     * attempts to derive the tokens from the rule. Whitespace and comments in the
+     * buffer are ignored.
+     * @param cfg a Context Free Grammar
+     * @param tokens buffer of input
+     */
+    public Matcher(ContextFreeGrammar cfg, TokenBuffer tokens){
+        this(cfg, new Chart(tokens), null);
+        matchAll();
     }
 
     /** Constructs a new Matcher from a set of CFGTokens and an input rule and
@@ -64,122 +161,958 @@ public final class Matcher {
      * @param builder a Builder object to operate on the output
      */
     public Matcher (ContextFreeGrammar cfg, LexerToken[] lexerTokens, Builder builder){
-        State returnResult = parse(cfg.getStartRule(), lexerTokens);
-        if (returnResult == null){
-            matches = false;
-            return;
+        this(cfg, new Chart(lexerTokens), builder);
+        matchAll();
+    }
+
+    /** Constructs a new Matcher from a buffer of tokens and an input rule and
+     * attempts to derive the tokens from the rule. Whitespace and comments in the
+     * buffer are ignored. Passes on the output to the given Builder, or null if the
+     * derivation fails.
+     * @param cfg a Context Free Grammar
+     * @param tokens buffer of input
+     * @param builder a Builder object to operate on the output
+     */
+    public Matcher (ContextFreeGrammar cfg, TokenBuffer tokens, Builder builder){
+        this(cfg, new Chart(tokens), builder);
+        matchAll();
+    }
+
+    /** Constructs a new Matcher from a buffer of tokens and an input rule and
+     * attempts to derive the tokens within the given budget, as
+     * Matcher(ContextFreeGrammar, TokenBuffer, Builder) does
+     * @param cfg a Context Free Grammar
+     * @param tokens buffer of input
+     * @param builder a Builder object to operate on the output
+     * @param budget the budget to hold the Matcher to
+     */
+    public Matcher (ContextFreeGrammar cfg, TokenBuffer tokens, Builder builder, ParseBudget budget){
+        this(cfg, new Chart(tokens), builder, false, budget, builder == null);
+        matchAll();
+    }
+
+    /** Constructs a new Matcher from a set of CFGTokens and an input rule and
+     * attempts to derive the CFGTokens from the rule, reusing the chart of the Matcher
+     * of the input before an edit where the edit leaves it alone. Passes on the output
+     * to the given Builder, or null if the derivation fails.
+     * <br>The previous Matcher's chart is taken over, so it cannot be reparsed again.
+     * It is only reused if it has finished, over the same grammar, and if this Matcher
+     * has a Builder, if it passed a derivation to a Builder too; otherwise the input is
+     * parsed anew.
+     * @param cfg a Context Free Grammar
+     * @param lexerTokens set of input
+     * @param builder a Builder object to operate on the output
+     * @param previous the Matcher of the input before the edit, or null
+     */
+    public Matcher (ContextFreeGrammar cfg, LexerToken[] lexerTokens, Builder builder,
+                    Matcher previous){
+        this(cfg, lexerTokens, builder, previous, false);
+    }
+
+    /** Constructs a new Matcher from a set of CFGTokens and an input rule and
+     * attempts to derive the CFGTokens from the rule, in recovery mode if asked to, and
+     * reusing the chart of the Matcher of the input before an edit, if any (see
+     * Matcher(ContextFreeGrammar, LexerToken[], Builder, Matcher)). Only a Matcher in
+     * the same mode is reused.
+     * @param cfg a Context Free Grammar
+     * @param lexerTokens set of input
+     * @param builder a Builder object to operate on the output
+     * @param previous the Matcher of the input before the edit, or null
+     * @param recover true to recover from bad tokens (see getErrors)
+     */
+    public Matcher (ContextFreeGrammar cfg, LexerToken[] lexerTokens, Builder builder,
+                    Matcher previous, boolean recover){
+        this(cfg, lexerTokens, builder, previous, recover, ParseBudget.UNLIMITED);
+    }
+
+    /** Constructs a new Matcher from a set of CFGTokens and an input rule and
+     * attempts to derive the CFGTokens within the given budget, as
+     * Matcher(ContextFreeGrammar, LexerToken[], Builder, Matcher, boolean) does
+     * @param cfg a Context Free Grammar
+     * @param lexerTokens set of input
+     * @param builder a Builder object to operate on the output
+     * @param previous the Matcher of the input before the edit, or null
+     * @param recover true to recover from bad tokens (see getErrors)
+     * @param budget the budget to hold the Matcher to
+     */
+    public Matcher (ContextFreeGrammar cfg, LexerToken[] lexerTokens, Builder builder,
+                    Matcher previous, boolean recover, ParseBudget budget){
+        this(cfg, lexerTokens, builder, previous, recover, budget,
+                canReparse(cfg, builder, previous, recover) ? sharedRows(lexerTokens, previous) : -1);
+    }
+
+    /** Constructs a new Matcher that reparses an edited input
+     * @param cfg a Context Free Grammar
+     * @param lexerTokens set of input
+     * @param builder a Builder object to operate on the output
+     * @param previous the Matcher of the input before the edit
+     * @param recover true to recover from bad tokens
+     * @param budget the budget to hold the Matcher to
+     * @param shared the number of rows to share with the previous chart, or -1 to
+     *               parse anew
+     */
+    private Matcher (ContextFreeGrammar cfg, LexerToken[] lexerTokens, Builder builder,
+                     Matcher previous, boolean recover, ParseBudget budget, int shared){
+        this(cfg, shared < 0 ? new Chart(lexerTokens) :
+                shared > 0 ? new Chart(previous.chart, shared) : new Chart(), builder, recover,
+                budget, false);
+        if (shared < 0) matchAll();
+        else reparse(lexerTokens, previous, shared);
+    }
+
+    /** Constructs a new Matcher with no input yet, to feed tokens to (see feed).
+     * Once the input is finished, the output is passed on to the given Builder.
+     * @param cfg a Context Free Grammar
+     * @param builder a Builder object to operate on the output, or null to only match
+     */
+    public Matcher (ContextFreeGrammar cfg, Builder builder){
+        this(cfg, new Chart(), builder);
+    }
+
+    /** Constructs a new Matcher over a chart of input, predicting the start rule in
+     * its first row
+     * @param cfg a Context Free Grammar
+     * @param table the chart of input
+     * @param builder a Builder object to operate on the output, or null to only match
+     */
+    private Matcher (ContextFreeGrammar cfg, Chart table, Builder builder){
+        this(cfg, table, builder, false, ParseBudget.UNLIMITED, builder == null);
+    }
+
+    /** Constructs a new Matcher over a chart of input, predicting the start rule in
+     * its first row
+     * @param cfg a Context Free Grammar
+     * @param table the chart of input
+     * @param builder a Builder object to operate on the output, or null to only match
+     * @param recover true to recover from bad tokens
+     * @param budget the budget to hold the Matcher to
+     * @param compact true to compact the chart; the Matcher must have no Builder and
+     *                not recover
+     */
+    private Matcher (ContextFreeGrammar cfg, Chart table, Builder builder, boolean recover,
+                     ParseBudget budget, boolean compact){
+        this.recover = recover;
+        this.budget = budget;
+        this.compact = compact;
+        lookahead = cfg.hasLookahead();
+        forest = builder != null;
+        this.builder = builder;
+        grammar = cfg.compile();
+        chart = table;
+        int start = grammar.getStartProduction();
+        if (chart.get(0).size() == 0)
+            chart.get(0).add(new State(grammar, start, grammar.getProduction(start), 0, chart.get(0)));
+    }
+
+    /** Attempts to derive the whole chart from the start rule of the grammar, and passes
+     * on the output to the Builder
+     */
+    private void matchAll(){
+        for (int i = 1; i < chart.size(); i++)
+            if (!step(i)) break;
+        finish();
+    }
+
+    /** Returns true if the chart of a Matcher may be taken over to reparse an edit of its
+     * input
+     * @param cfg the Context Free Grammar of the reparse
+     * @param builder the Builder of the reparse
+     * @param previous the Matcher of the input before the edit, or null
+     * @param recover whether the reparse recovers from bad tokens
+     * @return true if the Matcher can be reparsed
+     */
+    private static boolean canReparse(ContextFreeGrammar cfg, Builder builder, Matcher previous,
+                                      boolean recover){
+        return previous != null && previous.finished && !previous.reparsed &&
+                previous.abortReason == null && !previous.compact &&
+                previous.recover == recover &&
+                previous.grammar == cfg.compile() && previous.lookahead == cfg.hasLookahead() &&
+                (builder == null || previous.built);
+    }
+
+    /** Returns the number of rows of the chart of a Matcher that do not change when its
+     * input is edited into the given one: the processed rows before the first
+     * changed token. A token the edit only moved is not changed; the rows shared take
+     * on its new position.
+     * @param lexerTokens the edited input
+     * @param previous the Matcher of the input before the edit
+     * @return the number of rows to share
+     */
+    private static int sharedRows(LexerToken[] lexerTokens, Matcher previous){
+        int limit = Math.min(Math.min(lexerTokens.length, previous.chart.size() - 1),
+                previous.processed);
+        int same = 0;
+        while (same < limit &&
+                isSameText(previous.chart.get(same + 1).getCFGToken(), lexerTokens[same]))
+            same++;
+        return same;
+    }
+
+    /** Returns true if the token of a row is the given token, in its name, value and
+     * position
+     * @param token the token of a row
+     * @param lexerToken a token of input
+     * @return true if they are the same
+     */
+    private static boolean isSame(CFGToken token, LexerToken lexerToken){
+        return isSameText(token, lexerToken) &&
+                token.getLineNum() == lexerToken.getLineNum() &&
+                token.getColNum() == lexerToken.getColNum();
+    }
+
+    /** Returns true if the token of a row is the given token, in its name and value,
+     * though perhaps not in its position
+     * @param token the token of a row
+     * @param lexerToken a token of input
+     * @return true if they are the same but for their positions
+     */
+    private static boolean isSameText(CFGToken token, LexerToken lexerToken){
+        return token.getName().equals(lexerToken.getIds().toString()) &&
+                token.getValue().equals(lexerToken.getValue());
+    }
+
+    /** Derives an edited input, given the rows of the previous Matcher's chart that it
+     * shares (see sharedRows), and passes on the output to the Builder. Rows are added
+     * and processed from the first changed one on until one is like the old row at its
+     * place past the edit (see graft).
+     * @param lexerTokens the edited input
+     * @param previous the Matcher of the input before the edit
+     * @param shared the number of rows shared
+     */
+    private void reparse(LexerToken[] lexerTokens, Matcher previous, int shared){
+        previous.reparsed = true;
+        int n = lexerTokens.length, m = previous.chart.size() - 1;
+        //the number of tokens at the end of the input the edit left alone, though lines
+        //it added or removed may have moved them
+        int same = 0;
+        while (same < Math.min(n, m) - shared &&
+                isSameText(previous.chart.get(m - same).getCFGToken(), lexerTokens[n - 1 - same]))
+            same++;
+        firstChanged = shared;
+        lastChanged = Integer.MAX_VALUE;
+        processed = shared;
+        takeLeoLinks(previous);
+        //the shared rows hold the tokens of the old input, which the edit may have moved
+        for (int i = 1; i < shared; i++) restamp(i, lexerTokens[i - 1]);
+
+        if (shared > 0){
+            //the row after the shared ones holds the tokens the last of them scanned
+            chart.addRow(lexerTokens[shared - 1]);
+            rescan(shared - 1);
+            if (chart.get(shared).size() == 0){
+                badToken = chart.get(shared).getCFGToken();
+                finish();
+                return;
+            }
+        }
+        //the last token skipped in recovery mode
+        int skipped = -1;
+        for (int i = shared; i < n; i++){
+            chart.addRow(lexerTokens[i]);
+            int rows = chart.size();
+            boolean reached = step(rows - 1);
+            if (abortReason != null) break;
+            if (chart.size() < rows){
+                skipped = i;
+                continue;
+            }
+            //the token of the row and those after it are those of the old chart n - m rows on
+            if (i > n - same && skipped != i - 1 && i - (n - m) < previous.processed &&
+                    graft(rows - 2, i - (n - m), lexerTokens, previous))
+                return;
+            if (!reached) break;
+        }
+        finish();
+    }
+
+    /** Scans the tokens waiting in a processed row into the next row
+     * @param index the index of the row
+     */
+    private void rescan(int index){
+        ChartRow chartRow = chart.get(index), nextRow = chart.get(index + 1);
+        int next = grammar.getSymbol(nextRow.getCFGToken().getName());
+        for (State state : chartRow)
+            if (!state.completed() && state.nextTerm() < 0)
+                scan(nextRow, state, ~state.nextTerm(), next);
+    }
+
+    /** Takes over the rest of the previous chart if a processed row is like the row at
+     * its place in it, and finishes. The row and the tokens after it must be the same
+     * as in the previous chart but for their positions, which the rows taken over are
+     * given, and the old row must not be shared. The errors the previous Matcher
+     * recovered from are not taken over: its rows hold no token the edited input skips.
+     * @param index the index of the row
+     * @param oldIndex the index of the row at its place in the previous chart
+     * @param lexerTokens the edited input
+     * @param previous the Matcher of the input before the edit
+     * @return true if the previous chart was grafted in
+     */
+    private boolean graft(int index, int oldIndex, LexerToken[] lexerTokens, Matcher previous){
+        ChartRow row = chart.get(index), old = previous.chart.get(oldIndex);
+        if (!row.waitsLike(old)) return false;
+        if (forest){
+            expandLeoLinks(row);
+            previous.expandLeoLinks(old);
+        }
+        if (!row.isLike(old, firstChanged)) return false;
+        old.adopt(row);
+        chart.graft(index, previous.chart, oldIndex);
+        takeLeoLinks(previous);
+        processed = previous.processed + index - oldIndex;
+        badToken = previous.badToken;
+        //the rows taken over hold the tokens of the old input, which the edit may have
+        //moved; they are those at the end of the edited input (see reparse)
+        int first = lexerTokens.length - (chart.size() - index);
+        for (int i = index; i < chart.size(); i++){
+            CFGToken token = chart.get(i).getCFGToken();
+            if (badToken == token) badToken = restamp(i, lexerTokens[first + i - index]);
+            else restamp(i, lexerTokens[first + i - index]);
+        }
+        lastChanged = Math.max(index, oldIndex - 1);
+        finish();
+        return true;
+    }
+
+    /** Returns the token of a row taken over from the previous chart, given the
+     * position of the token at its place in the edited input if the edit moved it
+     * @param index the index of the row
+     * @param lexerToken the token at the row's place in the edited input
+     * @return the token the row holds
+     */
+    private CFGToken restamp(int index, LexerToken lexerToken){
+        ChartRow chartRow = chart.get(index);
+        CFGToken token = chartRow.getCFGToken();
+        if (isSame(token, lexerToken)) return token;
+        CFGToken moved = new CFGToken(token.getName(), token.getValue(),
+                lexerToken.getLineNum(), lexerToken.getColNum());
+        chartRow.setCFGToken(moved);
+        return moved;
+    }
+
+    /** Adds the next token of the input and processes the row before it. Returns
+     * false once the token cannot follow the input before it; the token is then the
+     * bad token (see getBadToken), the input cannot match, and further tokens are
+     * ignored. Also returns false once the Matcher has aborted (see getAbortReason).
+     * @param token the next token of the input, not the EOF token
+     * @return true if the input so far may still be matched
+     */
+    public boolean feed(LexerToken token){
+        if (finished)
+            throw new RuntimeException("Matcher Err: Token fed after the input was finished");
+        if (badToken != null || abortReason != null) return false;
+        chart.addRow(token);
+        return step(chart.size() - 1);
+    }
+
+    /** Ends the input: processes the last row and, if the input is matched, passes
+     * on the output to the Builder. In recovery mode, the input is completed first if
+     * need be, and the output of the repaired input is passed on even though it does
+     * not match. Does nothing if the input has ended already.
+     * @return true if and only if the derivation was matched
+     */
+    public boolean finish(){
+        if (finished) return matches;
+        finished = true;
+        if (badToken != null || !withinBudget()) return false;
+
+        ChartRow last = chart.get(chart.size() - 1);
+        if (processed < chart.size()) process(last.getIndex());
+        State returnResult = getResult(last);
+        if (returnResult == null && recover) returnResult = complete();
+        if (returnResult == null) return false;
+
+        matches = errors.isEmpty();
+        if (builder != null){
+            if (firstChanged < 0) builder.build(returnResult);
+            else builder.rebuild(returnResult, firstChanged, lastChanged);
+            built = true;
+        }
+        return matches;
+    }
+
+    /** Returns the completed state of the start rule in a row
+     * @param chartRow the row
+     * @return the state, or null if the start rule is not completed in the row
+     */
+    private State getResult(ChartRow chartRow){
+        for (State state : chartRow)
+            if (state.getProductionId() == grammar.getStartProduction() && state.completed())
+                return state;
+        return null;
+    }
+
+    /** Completes the input in recovery mode, when the start rule is not completed at its
+     * end. Of the states of the last row, the one with the fewest tokens left to derive,
+     * counting those of the states waiting on it in turn, is taken, and the first token
+     * of the shortest string it derives is put in as a row and processed; until the
+     * start rule is completed. Each token put in is recorded as an error.
+     * @return the completed state of the start rule, or null if the input cannot be
+     * completed
+     */
+    private State complete(){
+        CFGToken after = chart.get(chart.size() - 1).getCFGToken();
+        IdentityHashMap<ChartRow,Map<Integer,Long>> costs = new IdentityHashMap<>();
+        while (true){
+            int index = chart.size() - 1;
+            ChartRow last = chart.get(index);
+            State result = getResult(last);
+            if (result != null || !withinBudget()) return result;
+
+            State best = null;
+            long bestCost = NO_COST;
+            for (State state : last){
+                long rest = getRestCost(state, state.getDot());
+                if (rest == 0) continue;
+                long cost = Math.min(rest + getWaitingCost(state, costs), NO_COST);
+                if (cost < bestCost){
+                    best = state;
+                    bestCost = cost;
+                }
+            }
+            if (best == null) return null;
+
+            String token = grammar.getName(getFirstToken(best));
+            errors.add(new SyntaxError(after, token, 0));
+            reopen(index);
+            ChartRow inserted = chart.addRow(after == null ? new CFGToken(token, "", 1, 0) :
+                    new CFGToken(token, "", after.getLineNum(),
+                            after.getColNum() + after.getValue().length()));
+            process(index);
+            if (inserted.size() == 0) return null;
+            process(index + 1);
         }
+    }
+
+    /** Returns the number of tokens in the shortest string the terms of the production of
+     * a state derive, from a position on
+     * @param state the state
+     * @param from the position of the first term
+     * @return the number of tokens, or NO_COST if the terms derive no string
+     */
+    private long getRestCost(State state, int from){
+        int[] terms = grammar.getTerms(state.getProductionId());
+        long cost = 0;
+        for (int i = from; i < terms.length && cost < NO_COST; i++)
+            cost += Math.min(grammar.getShortestLength(terms[i]), NO_COST);
+        return Math.min(cost, NO_COST);
+    }
+
+    /** Returns the fewest tokens to derive for the states waiting on the rule of a state
+     * to complete the start rule, once the state is completed
+     * @param state the state
+     * @param costs the costs of the rules waited on in each row found so far
+     * @return the number of tokens, or NO_COST if the start rule cannot be completed
+     */
+    private long getWaitingCost(State state, IdentityHashMap<ChartRow,Map<Integer,Long>> costs){
+        if (state.getProductionId() == grammar.getStartProduction()) return 0;
+        Long cost = getWaitingCosts(state.getStart_chartRow(), costs).get(state.getSymbol());
+        return cost == null ? NO_COST : cost;
+    }
+
+    /** Returns the fewest tokens to derive to complete the start rule, once each of the
+     * rules waited on in a row is completed from the row: the tokens left to derive for
+     * a state waiting on the rule, and for the states waiting on that state's rule in
+     * turn. The rules waited on by states predicted in the row are found last, until
+     * no cheaper way is found.
+     * @param chartRow the row
+     * @param costs the costs of the rules waited on in each row found so far
+     * @return the cost of each rule waited on in the row
+     */
+    private Map<Integer,Long> getWaitingCosts(ChartRow chartRow,
+                                              IdentityHashMap<ChartRow,Map<Integer,Long>> costs){
+        Map<Integer,Long> rowCosts = costs.get(chartRow);
+        if (rowCosts != null) return rowCosts;
+        rowCosts = new HashMap<>();
+        ArrayList<State> predicted = new ArrayList<>();
+        for (State state : chartRow){
+            if (state.completed() || state.nextTerm() < 0) continue;
+            if (state.getStart_chartRow() == chartRow &&
+                    state.getProductionId() != grammar.getStartProduction())
+                predicted.add(state);
+            else lower(rowCosts, state.nextTerm(), Math.min(getRestCost(state, state.getDot() + 1) +
+                    getWaitingCost(state, costs), NO_COST));
+        }
+        boolean lowered = true;
+        while (lowered){
+            lowered = false;
+            for (State state : predicted){
+                Long cost = rowCosts.get(state.getSymbol());
+                if (cost != null) lowered |= lower(rowCosts, state.nextTerm(),
+                        Math.min(getRestCost(state, state.getDot() + 1) + cost, NO_COST));
+            }
+        }
+        costs.put(chartRow, rowCosts);
+        return rowCosts;
+    }
+
+    /** Lowers the cost of a rule to the given one, if it is lower
+     * @param costs the costs of the rules
+     * @param symbol the symbol of the rule
+     * @param cost the cost
+     * @return true if the cost was lowered
+     */
+    private static boolean lower(Map<Integer,Long> costs, int symbol, long cost){
+        Long old = costs.get(symbol);
+        if (old != null && old <= cost) return false;
+        costs.put(symbol, cost);
+        return true;
+    }
 
-        matches = true;
-//        NeuralLog.logMessage("trying to build\n\n\n");
-        builder.build(returnResult);
-//        builder.getTreeHead().print(0);
-//        NeuralLog.logMessage("Size is: " + builder.getTreeHead().size());
-//        NeuralLog.logMessage("\n\nDone building");
-//        System.exit(1);
+    /** Returns the first token of the shortest string the terms of the production of a
+     * state derive after its dot, following the shortest productions of the rules
+     * (see CompiledGrammar.getShortestProduction)
+     * @param state the state, with a token to derive
+     * @return the symbol id of the token
+     */
+    private int getFirstToken(State state){
+        int[] terms = grammar.getTerms(state.getProductionId());
+        int i = state.getDot();
+        while (true){
+            int term = terms[i];
+            if (grammar.getShortestLength(term) == 0) i++;
+            else if (term < 0) return ~term;
+            else {
+                terms = grammar.getTerms(grammar.getShortestProduction(term));
+                i = 0;
+            }
+        }
     }
 
-    /** Returns true if and only if the derivation was matched
+    /** Returns true if and only if the derivation was matched; false until the input
+     * is finished
      * @return true if the derivation was matched
      */
     public boolean matches(){return matches;}
 
+    /** Returns the number of states the Matcher added to its chart, a measure of the
+     * work done on the input. The states a right recursion shortcut skipped are counted
+     * once they are added for the Builder.
+     * @return the number of states in the chart
+     */
+    public int getStateCount(){return stateCount;}
+
     /** Executes Earley prediction. Fires when a non-complete non-terminal is
      * intercepted and fills the chartRow with possible production paths.
+     * @param grammar the compiled grammar
      * @param chartRow the prediction Matcher.Chart chartRow
-     * @param rule the current prediction rule
+     * @param symbol the symbol of the current prediction rule
+     * @param next the symbol of the next token, or -1 at the end of the input
      */
-    private void predict(ChartRow chartRow, Rule rule){
-        for (int i = 0; i < rule.productions.size(); i++){
-            Production prod = rule.productions.get(i);
-            chartRow.add(new State(rule.getName(),prod,0, chartRow));
+    private void predict(CompiledGrammar grammar, ChartRow chartRow, int symbol, int next){
+        //a rule is predicted once per row
+        if (!chartRow.markPredicted(symbol)) return;
+        for (int production : grammar.getProductions(symbol)){
+            if (lookahead && !grammar.canBegin(production, next)) continue;
+            chartRow.add(new State(grammar, production, grammar.getProduction(production), 0,
+                    chartRow));
         }
     }
 
+    /** Returns true if a state waiting on the given rule may move its dot past it right
+     * away, after Aycock and Horspool ("Practical Earley Parsing", 2002): the rule is
+     * nullable, and either has an empty production, which prediction has just added
+     * to the row, or has already been completed within the row. A state waiting on a
+     * nullable rule that is not yet completed here is passed over when it is.
+     * <br>Otherwise a nullable rule completed within a row would only advance the states
+     * that were waiting on it at the time.
+     * @param grammar the compiled grammar
+     * @param chartRow the row of the waiting state
+     * @param symbol the symbol of the rule
+     * @return true if the state may pass over the rule
+     */
+    private static boolean passesOver(CompiledGrammar grammar, ChartRow chartRow, int symbol){
+        return grammar.isNullable(symbol) &&
+                (grammar.hasEmptyProduction(symbol) || chartRow.isCompletedHere(symbol));
+    }
+
     /** Executes Earley scanning. Fires when a non-complete terminal
      * is intercepted ands the terminal to each state in the chartRow
      * if not already contained.
      * @param chartRow the scanning chartRow
      * @param state the scanning state
-     * @param token the terminal token
+     * @param token the symbol of the terminal token
+     * @param rowToken the symbol of the token of the chartRow
      */
-    private void scan(ChartRow chartRow, State state, Termable token){
-        if (!token.equals(chartRow.getCFGToken())) return;
+    private void scan(ChartRow chartRow, State state, int token, int rowToken){
+        if (token != rowToken) return;
         chartRow.add(state.getDotIncrementedState(new Production(chartRow.getCFGToken())));
-        lastRow = chartRow;
     }
 
     /** Executes Earley completion. Fires when a completed state
-     * is discovered. Increments the dot of the state and adds
-     * it to the chart chartRow.
+     * is discovered. Increments the dot of each state of the starting row
+     * waiting on the rule of the state and adds it to the chart chartRow.
+     * @param grammar the compiled grammar
      * @param chartRow the chart chartRow
      * @param state the completion state
      */
-    private void complete(ChartRow chartRow, State state){
-        if (!state.completed()) return;
-        for (int i = 0; i < state.getStart_chartRow().size(); i++ ){
-            State st = state.getStart_chartRow().get(i);
-            Termable term = st.next_term();
+    private void complete(CompiledGrammar grammar, ChartRow chartRow, State state){
+        ChartRow start = state.getStart_chartRow();
+        int symbol = state.getSymbol();
+        if (start == chartRow){
+            //the states waiting on a rule with an empty production pass over it themselves
+            if (grammar.hasEmptyProduction(symbol)) return;
+            chartRow.markCompletedHere(symbol);
+        }else{
+            State top = leoTop(start, symbol);
+            if (top != null){
+                State completed = top.getDotIncrementedState(top.getProduction());
+                chartRow.add(completed);
+                if (forest) addLeoLink(new LeoLink(chartRow,
+                        chartRow.get(chartRow.indexOf(completed)), state, start, symbol));
+                return;
+            }
+        }
+        for (int i = start.getFirstWaiting(symbol); i != -1; i = start.getNextWaiting(i))
+            advance(chartRow, start.get(i), state);
+    }
 
-            if (! (term instanceof Rule) ) continue;
-            if (term.getName().equals(state.name)){
-                chartRow.add(st.getDotIncrementedState(st.getProduction()));
+    /** Adds the state a waiting state moves on to when the rule it waits on is complete
+     * to a row, with its derivation if the forest is being recorded
+     * @param chartRow the row of the completion
+     * @param state the waiting state
+     * @param child the completed state of the rule, or null if none is known
+     */
+    private void advance(ChartRow chartRow, State state, State child){
+        State advanced = state.getDotIncrementedState(state.getProduction());
+        if (forest) chartRow.add(advanced, state, child);
+        else chartRow.add(advanced);
+    }
+
+    /** Returns the top of the right recursion on the given rule through the given row,
+     * after Leo ("A general context-free parsing algorithm running in linear time on
+     * every LR(k) grammar without using lookahead", 1991). If the only state of the row
+     * waiting on the rule is of the form A->xA, completing A there completes that
+     * state, which completes A at its own starting row, and so on; a list of n items
+     * would add n completed states per row. The chain is followed once per row instead,
+     * and completion adds the state at its top directly.
+     * <br>Only rows that are no longer being filled may be asked for.
+     * @param row the starting row of the completed rule
+     * @param symbol the symbol of the completed rule
+     * @return the waiting state at the top of the chain, or null if the row does not
+     * continue a right recursion
+     */
+    private State leoTop(ChartRow row, int symbol){
+        if (row.isLeoTopKnown(symbol)) return row.getLeoTop(symbol);
+        //follow the chain down to a row whose top is known, then fill in the way back
+        ArrayList<ChartRow> chain = new ArrayList<>();
+        State top = null;
+        ChartRow current = row;
+        while (true){
+            State waiting = recursionStep(current, symbol);
+            if (waiting == null) break;
+            chain.add(current);
+            ChartRow next = waiting.getStart_chartRow();
+            top = waiting;
+            if (next == current) break;
+            if (next.isLeoTopKnown(symbol)){
+                if (next.getLeoTop(symbol) != null) top = next.getLeoTop(symbol);
+                break;
             }
+            current = next;
         }
+        if (chain.isEmpty()){
+            if (row.getFirstWaiting(symbol) != -1) row.setLeoTop(symbol, null);
+            return null;
+        }
+        for (ChartRow r : chain) r.setLeoTop(symbol, top);
+        return top;
     }
 
-    /** Attempts to derive the given CFGTokens from the rule using the
-     * Earley parsing algorithm.
-     * @param rule the starting rule
-     * @param lexerTokens the list of lexerTokens
-     * @return a state representing a completed tree or null in case of failure
+    /** Returns the only state of the row waiting on the rule, if it has the form A->xA
+     * for the rule A
+     * @param row the row
+     * @param symbol the symbol of the rule
+     * @return the waiting state, or null
      */
-    private State parse( Rule rule, LexerToken[] lexerTokens){
-        //construct chart
-        Chart table = new Chart(lexerTokens);
-        table.get(0).add(new State("GAMMA_RULE",new Production(rule),0,table.get(0)));
-        lastRow = table.get(0);
+    private static State recursionStep(ChartRow row, int symbol){
+        int first = row.getFirstWaiting(symbol);
+        if (first == -1 || row.getNextWaiting(first) != -1) return null;
+        State waiting = row.get(first);
+        return waiting.getSymbol() == symbol && waiting.nextIsLast() ? waiting : null;
+    }
 
-        for ( int i = 0; i < table.size(); i++ ){
-            ChartRow chartRow = table.get(i);
+    /** Records a completion that skipped a right recursion, marking the state at its top
+     * so that the skipped states are added when its derivations are read
+     * @param link the completion
+     */
+    private void addLeoLink(LeoLink link){
+        ArrayList<LeoLink> links = leoLinks.get(link.row);
+        if (links == null){
+            leoLinks.put(link.row, links = new ArrayList<>());
+            link.row.setSkippedBy(this);
+        }
+        links.add(link);
+        link.top.setSkippedBy(this);
+    }
 
-            for ( int j = 0; j < chartRow.size(); j++ ){
-                State state = chartRow.get(j);
+    /** Takes over the completions that skipped a right recursion in the rows of the
+     * previous Matcher's chart that this chart shares or has grafted in, so that the
+     * previous Matcher is not kept for them
+     * @param previous the Matcher of the input before the edit
+     */
+    private void takeLeoLinks(Matcher previous){
+        Iterator<Map.Entry<ChartRow,ArrayList<LeoLink>>> entries =
+                previous.leoLinks.entrySet().iterator();
+        while (entries.hasNext()){
+            Map.Entry<ChartRow,ArrayList<LeoLink>> entry = entries.next();
+            ChartRow row = entry.getKey();
+            ArrayList<LeoLink> links = entry.getValue();
+            if (row.getIndex() >= chart.size() || chart.get(row.getIndex()) != row) continue;
+            entries.remove();
+            leoLinks.put(row, links);
+            row.setSkippedBy(this);
+            for (LeoLink link : links) link.top.setSkippedBy(this);
+        }
+    }
 
-                if (state.completed()){
-                    complete(chartRow,state);
-                }
-                else{
-                    Termable term = state.next_term();
-                    //polymorphism here?
-                    if (term instanceof Rule)
-                        predict(chartRow, (Rule) term);
-                    else if ( i + 1 < table.size() )
-                        scan(table.get(i+1),state, term);
-                }
+    /** Adds the states skipped over by the right recursion shortcut (see leoTop) below a
+     * state to its row, for the Builder reading its derivations (see
+     * State.getDerivations)
+     * @param top the state at the top of the recursion
+     */
+    void expandLeoLinks(State top){
+        ArrayList<LeoLink> rowLinks = leoLinks.get(top.getEnd_chartRow());
+        if (rowLinks == null) return;
+        ArrayList<LeoLink> links = new ArrayList<>();
+        rowLinks.removeIf(link -> link.top == top && links.add(link));
+        if (rowLinks.isEmpty()) leoLinks.remove(top.getEnd_chartRow());
+        expandLeoLinks(top.getEnd_chartRow(), links);
+    }
+
+    /** Adds the states skipped over by the right recursion shortcut to a row, below all
+     * the states at their tops (see ChartRow.isOutranked)
+     * @param row the row
+     */
+    void expandLeoLinks(ChartRow row){
+        row.setSkippedBy(null);
+        ArrayList<LeoLink> links = leoLinks.remove(row);
+        if (links == null) return;
+        for (LeoLink link : links) link.top.setSkippedBy(null);
+        expandLeoLinks(row, links);
+    }
+
+    /** Adds the states skipped over by the right recursion shortcut to a row, and
+     * records their derivations. The states of a chain go right before the state at its
+     * top, in the order in which completion would have added them.
+     * @param row the row of the completions
+     * @param links the completions that skipped a recursion, in the order they were made
+     */
+    private void expandLeoLinks(ChartRow row, List<LeoLink> links){
+        IdentityHashMap<State,List<State>> groups = new IdentityHashMap<>();
+        for (LeoLink link : links){
+            ArrayList<State> skipped = new ArrayList<>();
+            ChartRow start = link.start;
+            State waiting = recursionStep(start, link.symbol);
+            while (waiting != null && waiting.getStart_chartRow() != start){
+                State completed = waiting.getDotIncrementedState(waiting.getProduction());
+                if (completed.equals(link.top)) break;
+                skipped.add(completed);
+                start = waiting.getStart_chartRow();
+                waiting = recursionStep(start, link.symbol);
             }
+            if (skipped.isEmpty()) continue;
+            List<State> group = groups.get(link.top);
+            if (group == null) groups.put(link.top, skipped);
+            else group.addAll(skipped);
+        }
+        if (!groups.isEmpty()){
+            int size = row.size();
+            row.insertBefore(groups);
+            stateCount += row.size() - size;
         }
+        for (LeoLink link : links) deriveLeoLink(link);
+    }
 
-        //validate we've returned the pivot properly
+    /** Records the derivations of the states of a skipped right recursion, now in the
+     * row of its completion (see expandLeoLinks): each completed state of the chain is
+     * derived from the state waiting on the rule and the completion below it. Chains
+     * shared with another completion are only followed until they join it.
+     * @param link the completion that skipped the recursion
+     */
+    private static void deriveLeoLink(LeoLink link){
+        State child = link.child;
+        ChartRow row = link.start;
+        State waiting = recursionStep(row, link.symbol);
+        while (waiting != null){
+            int at = link.row.indexOf(waiting.getDotIncrementedState(waiting.getProduction()));
+            if (at < 0) return;
+            State completed = link.row.get(at);
+            if (completed.isDerivedBy(waiting, child)) return;
+            completed.derive(waiting, child);
+            if (completed.equals(link.top) || waiting.getStart_chartRow() == row) return;
+            child = completed;
+            row = waiting.getStart_chartRow();
+            waiting = recursionStep(row, link.symbol);
+        }
+    }
 
-        for (State state : table.get(table.size() - 1)) {
-            if (state.name.equals("GAMMA_RULE") && state.completed()) {
-                return state;
+    /** Processes the row before the given one, now that the token of the given row is
+     * known. Fails, recording the token as the bad token, if no state of the row before
+     * scanned it.
+     * @param index the index of the row
+     * @return true if a state reached the row
+     */
+    private boolean step(int index){
+        if (!withinBudget()) return false;
+        process(index - 1);
+        while (chart.get(index).size() == 0){
+            if (!recover){
+                badToken = chart.get(index).getCFGToken();
+                return false;
             }
+            skip(index);
+            if (index == chart.size()) return true;
+            if (!withinBudget()) return false;
+            process(index - 1);
         }
+        skipping = false;
+        return true;
+    }
 
-        //figure out the bad token
-        int indexOfBadToken = table.indexOf(lastRow)+1;
-        if (indexOfBadToken < table.size())
-            badToken = table.get(indexOfBadToken).getCFGToken();
-        return null;
+    /** Returns true if the budget of the Matcher is not spent, recording the reason to
+     * abort otherwise
+     * @return true if the Matcher may process another row
+     */
+    private boolean withinBudget(){
+        if (abortReason == null) abortReason = budget.check(stateCount, chart.size(), started);
+        return abortReason == null;
+    }
+
+    /** Skips the token of a row no state scanned, in recovery mode: records the error,
+     * or adds the token to the error of the tokens skipped just before it, removes the
+     * row and reopens the row before it, to process it again with the token after
+     * @param index the index of the row
+     */
+    private void skip(int index){
+        if (skipping) errors.set(errors.size() - 1, errors.get(errors.size() - 1).skipOne());
+        else errors.add(new SyntaxError(chart.get(index).getCFGToken(), null, 1));
+        skipping = true;
+        chart.removeRow(index);
+        reopen(index - 1);
+    }
+
+    /** Replaces a processed row with a reopened copy of it (see ChartRow.reopen), to
+     * process it again, forgetting what processing it found
+     * @param index the index of the row
+     */
+    private void reopen(int index){
+        ChartRow old = chart.get(index);
+        ArrayList<LeoLink> links = leoLinks.remove(old);
+        old.setSkippedBy(null);
+        if (links != null) for (LeoLink link : links) link.top.setSkippedBy(null);
+        chart.reopenRow(index);
+        stateCount -= old.size();
+        processed = index;
+    }
+
+    /** Predicts, scans and completes the states of a row using the Earley parsing
+     * algorithm, scanning into the next row if there is one
+     * @param index the index of the row
+     */
+    private void process(int index){
+        ChartRow chartRow = chart.get(index);
+        ChartRow nextRow = index + 1 < chart.size() ? chart.get(index + 1) : null;
+        //the symbol of the token of the next row, or -1 at the end of the input
+        int next = nextRow == null ? -1 : grammar.getSymbol(nextRow.getCFGToken().getName());
+
+        for ( int j = 0; j < chartRow.size(); j++ ){
+            State state = chartRow.get(j);
+
+            if (state.completed()){
+                complete(grammar,chartRow,state);
+            }
+            else{
+                int term = state.nextTerm();
+                //rules are predicted, tokens (complemented) are scanned
+                if (term >= 0){
+                    predict(grammar, chartRow, term, next);
+                    if (passesOver(grammar, chartRow, term))
+                        advance(chartRow, state,
+                                forest ? chartRow.getCompletedHere(grammar, term) : null);
+                }
+                else if ( nextRow != null )
+                    scan(nextRow, state, ~term, next);
+            }
+        }
+        stateCount += chartRow.size();
+        processed = index + 1;
+        if (compact && nextRow != null) compact(index);
+    }
+
+    /** Compacts a processed row (see ChartRow.compact) and, once the states the rows
+     * kept have doubled since rows were last released, and outnumber the rows, releases
+     * the rows that no state of the next row can go back to: those that are not the
+     * starting row of one of its states, or of a state kept in such a row in turn
+     * @param index the index of the row
+     */
+    private void compact(int index){
+        kept += chart.get(index).compact();
+        if (kept < 2 * live + index) return;
+        boolean[] reachable = new boolean[index + 1];
+        for (State state : chart.get(index + 1))
+            reachable[state.getStart_chartRow().getIndex()] = true;
+        kept = 0;
+        for (int i = index; i >= 0; i--){
+            ChartRow chartRow = chart.get(i);
+            if (!reachable[i]){
+                if (chartRow.size() > 0) chartRow.release();
+                continue;
+            }
+            kept += chartRow.size();
+            for (State state : chartRow) reachable[state.getStart_chartRow().getIndex()] = true;
+        }
+        live = kept;
     }
       
     /** Returns the "bad" token, or the first token that the Parser couldn't match.
-     * Returns null if there was no such token
+     * Returns null if there was no such token. A fed token is known to be bad as soon
+     * as it is fed. In recovery mode, it is the first token skipped.
      * @return the bad token
      */
-    public CFGToken getBadToken(){return badToken;}
+    public CFGToken getBadToken(){
+        if (badToken != null) return badToken;
+        for (SyntaxError error : errors)
+            if (error.getExpected() == null) return error.getToken();
+        return null;
+    }
+
+    /** Returns the reason the Matcher aborted, its budget being spent (see ParseBudget)
+     * @return the reason, or null if the Matcher did not abort
+     */
+    public ParseBudget.Reason getAbortReason(){return abortReason;}
+
+    /** Returns the chart of the Matcher, holding the rows of the repaired input
+     * @return the chart
+     */
+    Chart getChart(){return chart;}
+
+    /** Returns the errors recovered from in recovery mode, in the order of the input:
+     * each run of tokens skipped, and each token put in at the end of the input
+     * @return the errors, empty if there were none or the Matcher does not recover
+     */
+    public List<SyntaxError> getErrors(){return Collections.unmodifiableList(errors);}
+
+    /** A completion that skipped a right recursion **/
+    private static final class LeoLink {
+        private final ChartRow row, start;
+        private final State top, child;
+        private final int symbol;
+
+        /** Records a completion
+         * @param row the row of the completion
+         * @param top the completed state at the top of the recursion, as the row holds it
+         * @param child the completed state of the rule at the bottom of the recursion
+         * @param start the starting row of the completed rule
+         * @param symbol the symbol of the completed rule
+         */
+        private LeoLink(ChartRow row, State top, State child, ChartRow start, int symbol){
+            this.row = row;
+            this.top = top;
+            this.child = child;
+            this.start = start;
+            this.symbol = symbol;
+        }
+    }
 
 
 }
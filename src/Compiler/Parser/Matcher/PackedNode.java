@@ -0,0 +1,47 @@
+package Compiler.Parser.Matcher;
+
+/**
+ * One way of deriving a State of a Matcher's chart: the state before its dot was moved
+ * over its last term, and the completed state of that term. The states of a chart
+ * and their derivations form a binarized shared packed parse forest (Scott, "SPPF-Style
+ * Parsing From Earley Recognisers", 2008): a completed state stands for its rule over
+ * its tokens, any other state for a prefix of its production, and each derivation is a
+ * packed node under it. A Builder can read any tree of the input off the forest
+ * without searching the chart.
+ * <br>The derivations of a state are kept in a list; a PackedNode is immutable.
+ */
+public final class PackedNode {
+
+    private final State predecessor;
+    private final State child;
+    private final PackedNode next;
+
+    /** Constructs a derivation
+     * @param predecessor the state before the dot was moved, ending where the child
+     *                    starts
+     * @param child the completed state of the term the dot was moved over
+     * @param next the next derivation of the same state, or null
+     */
+    PackedNode(State predecessor, State child, PackedNode next){
+        this.predecessor = predecessor;
+        this.child = child;
+        this.next = next;
+    }
+
+    /** Returns the state before the dot was moved over the term
+     * @return the predecessor, a state of the same production and starting row
+     */
+    public State getPredecessor(){return predecessor;}
+
+    /** Returns the completed state of the term the dot was moved over
+     * @return the child, or null if the term derives the empty string and no
+     * completion of it was found in the row
+     */
+    public State getChild(){return child;}
+
+    /** Returns the next derivation of the same state
+     * @return the next derivation, or null if this is the last
+     */
+    public PackedNode getNext(){return next;}
+
+}
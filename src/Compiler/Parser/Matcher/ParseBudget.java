@@ -0,0 +1,75 @@
+package Compiler.Parser.Matcher;
+
+/**
+ * The limits a Matcher is held to: the number of states it may add to its chart, the
+ * number of rows of the chart, the time it may take, and a token by which it may be
+ * cancelled. A Matcher checks its budget before each row it processes, and aborts
+ * when the budget is spent, giving the reason (see Matcher.getAbortReason). A
+ * ParseBudget is immutable, and may be shared by Matchers.
+ */
+public final class ParseBudget {
+
+    /** Why a Matcher aborted **/
+    public enum Reason {
+        /** the cancellation token was cancelled **/
+        CANCELLED,
+        /** the chart held more states than allowed **/
+        STATES,
+        /** the chart had more rows than allowed **/
+        ROWS,
+        /** the Matcher ran for longer than allowed **/
+        TIME
+    }
+
+    /** A budget without limits **/
+    public static final ParseBudget UNLIMITED =
+            new ParseBudget(Long.MAX_VALUE, Integer.MAX_VALUE, Long.MAX_VALUE, null);
+
+    private final long maxStates;
+    private final int maxRows;
+    private final long maxNanos;
+    private final CancellationToken token;
+
+    /** Constructs a new budget
+     * @param maxStates the number of states a Matcher may add to its chart
+     * @param maxRows the number of rows its chart may have, including the first
+     * @param maxMillis the time in milliseconds it may take, from when it is constructed
+     * @param token the token by which it may be cancelled, or null if it may not be
+     */
+    public ParseBudget(long maxStates, int maxRows, long maxMillis, CancellationToken token){
+        if (maxStates < 0 || maxRows < 0 || maxMillis < 0)
+            throw new RuntimeException("Parse Budget Err: Limits must not be negative");
+        this.maxStates = maxStates;
+        this.maxRows = maxRows;
+        this.maxNanos = maxMillis >= Long.MAX_VALUE / 1000000 ? Long.MAX_VALUE : maxMillis * 1000000;
+        this.token = token;
+    }
+
+    /** Constructs a new budget with a time limit and a cancellation token only
+     * @param maxMillis the time in milliseconds a Matcher may take
+     * @param token the token by which it may be cancelled, or null if it may not be
+     */
+    public ParseBudget(long maxMillis, CancellationToken token){
+        this(Long.MAX_VALUE, Integer.MAX_VALUE, maxMillis, token);
+    }
+
+    /** Returns the reason the budget is spent, if it is
+     * @param states the number of states in the chart
+     * @param rows the number of rows of the chart
+     * @param started the time the Matcher was constructed at, by System.nanoTime
+     * @return the reason to abort, or null if the Matcher may go on
+     */
+    Reason check(long states, int rows, long started){
+        if (token != null && token.isCancelled()) return Reason.CANCELLED;
+        if (states > maxStates) return Reason.STATES;
+        if (rows > maxRows) return Reason.ROWS;
+        if (maxNanos != Long.MAX_VALUE && System.nanoTime() - started > maxNanos) return Reason.TIME;
+        return null;
+    }
+
+    /** Returns the cancellation token of the budget
+     * @return the token, or null if there is none
+     */
+    public CancellationToken getToken(){return token;}
+
+}
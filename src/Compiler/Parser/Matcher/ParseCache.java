@@ -0,0 +1,652 @@
+package Compiler.Parser.Matcher;
+
+import Compiler.Parser.CFG.CFGToken;
+import Compiler.Parser.CFG.CompiledGrammar;
+import Compiler.Parser.CFG.ContextFreeGrammar;
+import Compiler.Parser.CFG.Production;
+import Compiler.Parser.ParserTree.ParserTreeNode;
+import Compiler.Scanner.LexerToken;
+import Compiler.Scanner.TokenBuffer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * This class is designed to keep the parses of inputs, so that an input seen before,
+ * in another tab, a file opened again or a corpus parsed again, is not parsed again.
+ * A parse is kept for its grammar and the names and values of its tokens: the
+ * fingerprint and priorities of the compiled grammar (see
+ * CompiledGrammar.getFingerprint), and two rolling hashes of the tokens with their
+ * number. Positions are left out, so an input moved by whitespace is the same input.
+ * <br>A parse is kept as its derivation, not as a tree: for each node of the tree, its
+ * production and the rows it starts and ends at, and for an input repaired in recovery
+ * mode, the tokens kept and put in. A hit builds the tree anew over the tokens it is
+ * given, so the tree holds their positions, as a Matcher's would; building it takes
+ * time linear in its size. Only parses that passed a tree to their Builder are kept; an
+ * input with errors is only a hit in recovery mode.
+ * <br>The cache holds parses up to a size in bytes, evicting the least recently used
+ * ones first. A cache may be kept on disk (see save), in a file in the directory named by the
+ * system property "violet.parses", or else in ".violet/parses" under the home directory
+ * of the user; it is read back in when it is constructed. A damaged file is ignored.
+ * A ParseCache is thread-safe.
+ */
+public final class ParseCache {
+
+    private static final int MAGIC = 0x56505253;
+    //the layout of the file; files of another version are ignored
+    private static final int VERSION = 1;
+    //what an entry costs besides its arrays, in bytes
+    private static final int OVERHEAD = 96;
+
+    private final long capacity;
+    private final File file;
+    private final LinkedHashMap<Key,Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long size = 0;
+    //whether entries were added since the cache was read or saved
+    private boolean changed = false;
+    //the key of each compiled grammar seen
+    private static final Map<CompiledGrammar,Long> grammarKeys = new WeakHashMap<>();
+
+    /** Constructs a new cache kept in memory only
+     * @param capacity the size in bytes of the parses the cache may hold
+     */
+    public ParseCache(long capacity){
+        this(capacity, null);
+    }
+
+    /** Constructs a new cache, reading in the parses kept in the given file, if any
+     * @param capacity the size in bytes of the parses the cache may hold
+     * @param file the file the cache is kept in (see save), or null to keep it in memory
+     *             only
+     */
+    public ParseCache(long capacity, File file){
+        if (capacity < 0) throw new RuntimeException("Parse Cache Err: Capacity must not be negative");
+        this.capacity = capacity;
+        this.file = file;
+        if (file != null){
+            try {
+                read();
+            }catch (IOException e){
+                //a damaged cache is started anew
+                entries.clear();
+                size = 0;
+            }
+        }
+    }
+
+    /** Returns the directory parse caches are kept in
+     * @return the directory of the caches, which may not exist yet
+     */
+    public static File getDirectory(){
+        String directory = System.getProperty("violet.parses");
+        if (directory != null) return new File(directory);
+        return new File(new File(System.getProperty("user.home"), ".violet"), "parses");
+    }
+
+    /** Returns the parse kept for an input, built over its tokens
+     * @param cfg the Context Free Grammar of the input
+     * @param lexerTokens the input
+     * @param recover true if the parse is for recovery mode, which may hold errors
+     * @return the parse, or null if none is kept
+     */
+    public Result get(ContextFreeGrammar cfg, LexerToken[] lexerTokens, boolean recover){
+        return get(cfg, tokensOf(lexerTokens), recover);
+    }
+
+    /** Returns the parse kept for an input, built over its tokens. Whitespace and
+     * comments in the buffer are ignored.
+     * @param cfg the Context Free Grammar of the input
+     * @param tokens the input
+     * @return the parse, or null if none is kept or it holds errors
+     */
+    public Result get(ContextFreeGrammar cfg, TokenBuffer tokens){
+        return get(cfg, tokensOf(tokens), false);
+    }
+
+    /** Keeps the parse of an input by a Matcher, if it passed a tree to its Builder
+     * @param cfg the Context Free Grammar of the input
+     * @param lexerTokens the input
+     * @param matcher the Matcher of the input
+     * @param head the head of the tree its Builder built (see ASTBuilder.getTreeHead),
+     *             or null if there is none
+     */
+    public void put(ContextFreeGrammar cfg, LexerToken[] lexerTokens, Matcher matcher,
+                    ParserTreeNode head){
+        put(cfg, tokensOf(lexerTokens), matcher, head);
+    }
+
+    /** Keeps the parse of an input by a Matcher, if it passed a tree to its Builder.
+     * Whitespace and comments in the buffer are ignored.
+     * @param cfg the Context Free Grammar of the input
+     * @param tokens the input
+     * @param matcher the Matcher of the input
+     * @param head the head of the tree its Builder built (see ASTBuilder.getTreeHead),
+     *             or null if there is none
+     */
+    public void put(ContextFreeGrammar cfg, TokenBuffer tokens, Matcher matcher,
+                    ParserTreeNode head){
+        put(cfg, tokensOf(tokens), matcher, head);
+    }
+
+    /** Returns the number of parses held
+     * @return the number of parses
+     */
+    public synchronized int size(){return entries.size();}
+
+    /** Forgets all parses held **/
+    public synchronized void clear(){
+        entries.clear();
+        size = 0;
+        changed = true;
+    }
+
+    /** Subroutine for get: returns the parse kept for an input
+     * @param cfg the Context Free Grammar of the input
+     * @param input the tokens of the input
+     * @param recover true if the parse may hold errors
+     * @return the parse, or null if none is kept
+     */
+    private Result get(ContextFreeGrammar cfg, List<CFGToken> input, boolean recover){
+        CompiledGrammar grammar = cfg.compile();
+        Entry entry;
+        synchronized (this){
+            entry = entries.get(key(grammar, input));
+        }
+        if (entry == null || !recover && entry.hasErrors()) return null;
+        return entry.rebuild(grammar, input);
+    }
+
+    /** Subroutine for put: keeps the parse of an input
+     * @param cfg the Context Free Grammar of the input
+     * @param input the tokens of the input
+     * @param matcher the Matcher of the input
+     * @param head the head of the tree, or null
+     */
+    private void put(ContextFreeGrammar cfg, List<CFGToken> input, Matcher matcher,
+                     ParserTreeNode head){
+        if (head == null || matcher.getAbortReason() != null) return;
+        CompiledGrammar grammar = cfg.compile();
+        Entry entry = Entry.of(grammar, input, matcher, head);
+        if (entry == null) return;
+        Key key = key(grammar, input);
+        synchronized (this){
+            add(key, entry);
+            changed = true;
+        }
+    }
+
+    /** Adds an entry, evicting the least recently used ones while the cache is full. An
+     * entry larger than the cache is not added.
+     * @param key the key of the entry
+     * @param entry the entry
+     */
+    private void add(Key key, Entry entry){
+        Entry old = entries.remove(key);
+        if (old != null) size -= old.getSize();
+        if (entry.getSize() > capacity) return;
+        entries.put(key, entry);
+        size += entry.getSize();
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (size > capacity){
+            size -= eldest.next().getSize();
+            eldest.remove();
+        }
+    }
+
+    /** Writes the parses held to the file of the cache, if it has one and parses were
+     * added since it was read or saved. The file is written beside itself and then
+     * moved over, so that it is never read half written.
+     * @throws IOException if the file cannot be written
+     */
+    public synchronized void save() throws IOException {
+        if (file == null || !changed) return;
+        //the body of the file first, so that it can be checked when it is read
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(body);
+        out.writeInt(entries.size());
+        //least recently used first, so reading them back in keeps their order
+        for (Map.Entry<Key,Entry> entry : entries.entrySet()){
+            entry.getKey().write(out);
+            entry.getValue().write(out);
+        }
+        CRC32 check = new CRC32();
+        check.update(body.toByteArray());
+
+        File directory = file.getAbsoluteFile().getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("Cannot make directory " + directory);
+        File partial = File.createTempFile(file.getName(), ".part", directory);
+        try {
+            try (DataOutputStream header = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(partial)))){
+                header.writeInt(MAGIC);
+                header.writeInt(VERSION);
+                header.writeLong(check.getValue());
+                body.writeTo(header);
+            }
+            try {
+                Files.move(partial.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            }catch (AtomicMoveNotSupportedException e){
+                Files.move(partial.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }finally {
+            Files.deleteIfExists(partial.toPath());
+        }
+        changed = false;
+    }
+
+    /** Reads in the parses kept in the file of the cache, as far as they fit
+     * @throws IOException if the file is damaged
+     */
+    private void read() throws IOException {
+        if (!file.isFile()) return;
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new ByteArrayInputStream(bytes)));
+        if (bytes.length < 16 || in.readInt() != MAGIC) throw new IOException("Not a parse cache");
+        if (in.readInt() != VERSION) return;
+        long sum = in.readLong();
+        CRC32 check = new CRC32();
+        check.update(bytes, 16, bytes.length - 16);
+        if (check.getValue() != sum) throw new IOException("Damaged parse cache");
+        try {
+            for (int n = in.readInt(); n > 0; n--){
+                Key key = Key.read(in);
+                add(key, Entry.read(in));
+            }
+        }catch (RuntimeException e){
+            throw new IOException("Damaged parse cache: " + e.getMessage());
+        }
+    }
+
+    /** Returns the key of an input
+     * @param grammar the compiled grammar of the input
+     * @param input the tokens of the input
+     * @return the key
+     */
+    private static Key key(CompiledGrammar grammar, List<CFGToken> input){
+        long first = 0xcbf29ce484222325L, second = 0x84222325cbf29ce4L;
+        for (CFGToken token : input){
+            String name = token.getName(), value = token.getValue();
+            for (int i = 0; i < name.length(); i++){
+                first = (first ^ name.charAt(i)) * 0x100000001b3L;
+                second = second * 31 + name.charAt(i);
+            }
+            first = (first ^ 0xff) * 0x100000001b3L;
+            second = second * 31 + 0xff;
+            for (int i = 0; i < value.length(); i++){
+                first = (first ^ value.charAt(i)) * 0x100000001b3L;
+                second = second * 31 + value.charAt(i);
+            }
+            first = (first ^ 0xffff) * 0x100000001b3L;
+            second = second * 0x9E3779B97F4A7C15L + 0xffff;
+        }
+        return new Key(grammarKey(grammar), first, second, input.size());
+    }
+
+    /** Returns the key of a compiled grammar: its fingerprint and the priorities of its
+     * productions, which decide the trees read off a parse
+     * @param grammar the compiled grammar
+     * @return the key of the grammar
+     */
+    private static long grammarKey(CompiledGrammar grammar){
+        synchronized (grammarKeys){
+            Long key = grammarKeys.get(grammar);
+            if (key != null) return key;
+            long hash = grammar.getFingerprint();
+            for (int p = 0; p < grammar.getProductionCount(); p++)
+                hash = (hash ^ grammar.getPriority(p)) * 0x100000001b3L;
+            grammarKeys.put(grammar, hash);
+            return hash;
+        }
+    }
+
+    /** Returns the tokens of an input, as a Chart makes them
+     * @param lexerTokens the input
+     * @return the tokens
+     */
+    private static List<CFGToken> tokensOf(LexerToken[] lexerTokens){
+        ArrayList<CFGToken> tokens = new ArrayList<>(lexerTokens.length);
+        for (LexerToken token : lexerTokens)
+            tokens.add(new CFGToken(token.getIds().toString(), token.getValue(),
+                    token.getLineNum(), token.getColNum()));
+        return tokens;
+    }
+
+    /** Returns the tokens of an input, as a Chart makes them, leaving out whitespace and
+     * comments
+     * @param buffer the input
+     * @return the tokens
+     */
+    private static List<CFGToken> tokensOf(TokenBuffer buffer){
+        ArrayList<CFGToken> tokens = new ArrayList<>(buffer.size());
+        for (int i = 0; i < buffer.size(); i++){
+            LexerToken.TokenIds id = buffer.getIds(i);
+            if (id == LexerToken.TokenIds.NULL || id == LexerToken.TokenIds.COMMENT) continue;
+            tokens.add(new CFGToken(id.toString(), buffer.getValue(i), buffer.getLineNum(i),
+                    buffer.getColNum(i)));
+        }
+        return tokens;
+    }
+
+    /** A parse kept in the cache, built over the tokens of an input **/
+    public static final class Result {
+        private final ParserTreeNode head;
+        private final List<SyntaxError> errors;
+
+        /** Constructs a parse
+         * @param head the head of its tree
+         * @param errors the errors recovered from
+         */
+        private Result(ParserTreeNode head, List<SyntaxError> errors){
+            this.head = head;
+            this.errors = Collections.unmodifiableList(errors);
+        }
+
+        /** Returns the head of the tree of the parse, as ASTBuilder.getTreeHead does
+         * @return the head of the tree
+         */
+        public ParserTreeNode getTreeHead(){return head;}
+
+        /** Returns the errors recovered from, as Matcher.getErrors does
+         * @return the errors, empty if there were none
+         */
+        public List<SyntaxError> getErrors(){return errors;}
+
+        /** Returns true if the input was matched without errors
+         * @return true if the input matches
+         */
+        public boolean matches(){return errors.isEmpty();}
+    }
+
+    /** The key of an input: its grammar and its tokens **/
+    private static final class Key {
+        private final long grammar, first, second;
+        private final int count;
+
+        /** Constructs a key
+         * @param grammar the key of the grammar
+         * @param first a hash of the tokens
+         * @param second another hash of the tokens
+         * @param count the number of tokens
+         */
+        private Key(long grammar, long first, long second, int count){
+            this.grammar = grammar;
+            this.first = first;
+            this.second = second;
+            this.count = count;
+        }
+
+        @Override
+        public boolean equals(Object o){
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return grammar == key.grammar && first == key.first && second == key.second &&
+                    count == key.count;
+        }
+
+        @Override
+        public int hashCode(){return (int) (first ^ first >>> 32) * 31 + count;}
+
+        /** Writes the key
+         * @param out the output
+         * @throws IOException if the key cannot be written
+         */
+        private void write(DataOutputStream out) throws IOException {
+            out.writeLong(grammar);
+            out.writeLong(first);
+            out.writeLong(second);
+            out.writeInt(count);
+        }
+
+        /** Reads a key
+         * @param in the input
+         * @return the key
+         * @throws IOException if the key cannot be read
+         */
+        private static Key read(DataInputStream in) throws IOException {
+            return new Key(in.readLong(), in.readLong(), in.readLong(), in.readInt());
+        }
+    }
+
+    /** The derivation of an input: the input tokens the rows of its chart hold, the
+     * tokens put in after them, and the nodes of its tree, each as its production, the
+     * row whose token its production was replaced by when it was scanned (or -1), and
+     * its starting and ending rows. The nodes are in preorder; the children of a node
+     * are the rules of its production.
+     */
+    private static final class Entry {
+        private final int[] kept;
+        private final String[] inserted;
+        private final int[] nodes;
+
+        /** Constructs an entry
+         * @param kept the index in the input of the token of each row after the first
+         * @param inserted the names of the tokens put in after them
+         * @param nodes the nodes of the tree, four ints each
+         */
+        private Entry(int[] kept, String[] inserted, int[] nodes){
+            this.kept = kept;
+            this.inserted = inserted;
+            this.nodes = nodes;
+        }
+
+        /** Returns the entry of the parse of an input by a Matcher
+         * @param grammar the compiled grammar of the Matcher
+         * @param input the tokens of the input
+         * @param matcher the Matcher
+         * @param head the head of the tree its Builder built
+         * @return the entry, or null if the parse cannot be kept
+         */
+        private static Entry of(CompiledGrammar grammar, List<CFGToken> input, Matcher matcher,
+                                ParserTreeNode head){
+            Chart chart = matcher.getChart();
+            ArrayList<String> inserted = new ArrayList<>();
+            for (SyntaxError error : matcher.getErrors())
+                if (error.getExpected() != null) inserted.add(error.getExpected());
+            //the rows left after the tokens skipped, matched to the input in order
+            int count = chart.size() - 1 - inserted.size();
+            if (count < 0) return null;
+            int[] kept = new int[count];
+            for (int row = 0, i = 0; row < kept.length; row++, i++){
+                CFGToken token = chart.get(row + 1).getCFGToken();
+                while (i < input.size() && !isSame(input.get(i), token)) i++;
+                if (i == input.size()) return null;
+                kept[row] = i;
+            }
+            int[] nodes = encode(grammar, head, chart);
+            if (nodes == null) return null;
+            return new Entry(kept, inserted.toArray(new String[inserted.size()]), nodes);
+        }
+
+        /** Writes the nodes of a tree in preorder. The tree is walked on a stack of its
+         * own, since it may be deeper than the thread's stack (see ASTBuilder).
+         * @param grammar the compiled grammar of the tree
+         * @param head the head of the tree
+         * @param chart the chart of the tree
+         * @return the nodes written, or null if the tree cannot be kept
+         */
+        private static int[] encode(CompiledGrammar grammar, ParserTreeNode head, Chart chart){
+            int[] nodes = new int[64];
+            int at = 0;
+            //the children of the nodes on the way down to the next node, yet to be written
+            ArrayDeque<Iterator<ParserTreeNode>> pending = new ArrayDeque<>();
+            pending.push(Collections.singletonList(head).iterator());
+            while (!pending.isEmpty()){
+                if (!pending.peek().hasNext()){
+                    pending.pop();
+                    continue;
+                }
+                ParserTreeNode node = pending.peek().next();
+                State state = node.value;
+                int production = state.getProductionId();
+                int scanned = -1;
+                if (state.getProduction() != grammar.getProduction(production)){
+                    //a scanned state ends at the row of its token, which holds the token
+                    //where it is now if a reparse moved it (see Matcher.restamp)
+                    ChartRow row = state.getEnd_chartRow();
+                    if (row.getIndex() >= chart.size() || chart.get(row.getIndex()) != row ||
+                            !state.getProduction().get(0).equals(row.getCFGToken()))
+                        return null;
+                    scanned = row.getIndex();
+                }
+                if (!state.completed() || node.getNumChildren() != state.getRules().size())
+                    return null;
+                if (at + 4 > nodes.length) nodes = Arrays.copyOf(nodes, 2 * nodes.length);
+                nodes[at] = production;
+                nodes[at + 1] = scanned;
+                nodes[at + 2] = state.getStart_chartRow().getIndex();
+                nodes[at + 3] = state.getEnd_chartRow().getIndex();
+                at += 4;
+                pending.push(node.getChildren());
+            }
+            return Arrays.copyOf(nodes, at);
+        }
+
+        /** Returns the parse built over the tokens of an input: the chart rows of the
+         * repaired input, the errors and the tree
+         * @param grammar the compiled grammar of the parse
+         * @param input the tokens of the input
+         * @return the parse
+         */
+        private Result rebuild(CompiledGrammar grammar, List<CFGToken> input){
+            Chart chart = new Chart();
+            ArrayList<SyntaxError> errors = new ArrayList<>();
+            int next = 0;
+            for (int index : kept){
+                if (index > next) errors.add(new SyntaxError(input.get(next), null, index - next));
+                chart.addRow(input.get(index));
+                next = index + 1;
+            }
+            if (input.size() > next) errors.add(new SyntaxError(input.get(next), null, input.size() - next));
+            CFGToken after = chart.get(chart.size() - 1).getCFGToken();
+            for (String token : inserted){
+                errors.add(new SyntaxError(after, token, 0));
+                chart.addRow(after == null ? new CFGToken(token, "", 1, 0) :
+                        new CFGToken(token, "", after.getLineNum(),
+                                after.getColNum() + after.getValue().length()));
+            }
+            return new Result(decode(grammar, chart), errors);
+        }
+
+        /** Builds the tree of the nodes, on a stack of its own rather than by recursion
+         * (see encode)
+         * @param grammar the compiled grammar of the tree
+         * @param chart the rows of the repaired input
+         * @return the tree
+         */
+        private ParserTreeNode decode(CompiledGrammar grammar, Chart chart){
+            ArrayDeque<Frame> frames = new ArrayDeque<>();
+            for (int at = 0; ; at += 4){
+                int production = nodes[at], scanned = nodes[at + 1];
+                State state = new State(grammar, production, scanned < 0 ?
+                        grammar.getProduction(production) :
+                        new Production(chart.get(scanned).getCFGToken()),
+                        grammar.getTerms(production).length, chart.get(nodes[at + 2]));
+                state.setEnd_chartRow(chart.get(nodes[at + 3]));
+                frames.push(new Frame(state, grammar.getRules(production).size()));
+                //the nodes whose children have all been built are built in turn
+                while (frames.peek().next == frames.peek().children.length){
+                    Frame frame = frames.pop();
+                    ParserTreeNode tree = new ParserTreeNode(frame.state, frame.children);
+                    if (frames.isEmpty()) return tree;
+                    frames.peek().children[frames.peek().next++] = tree;
+                }
+            }
+        }
+
+        /** Returns true if the parse recovered from errors
+         * @return true if tokens were skipped or put in
+         */
+        private boolean hasErrors(){
+            if (inserted.length > 0) return true;
+            for (int i = 0; i < kept.length; i++) if (kept[i] != i) return true;
+            return false;
+        }
+
+        /** Returns the size of the entry in memory, roughly
+         * @return the size in bytes
+         */
+        private long getSize(){
+            long size = OVERHEAD + 4L * (kept.length + nodes.length);
+            for (String token : inserted) size += 2L * token.length() + 48;
+            return size;
+        }
+
+        /** Writes the entry
+         * @param out the output
+         * @throws IOException if the entry cannot be written
+         */
+        private void write(DataOutputStream out) throws IOException {
+            out.writeInt(kept.length);
+            for (int index : kept) out.writeInt(index);
+            out.writeInt(inserted.length);
+            for (String token : inserted) out.writeUTF(token);
+            out.writeInt(nodes.length);
+            for (int node : nodes) out.writeInt(node);
+        }
+
+        /** Reads an entry
+         * @param in the input
+         * @return the entry
+         * @throws IOException if the entry cannot be read
+         */
+        private static Entry read(DataInputStream in) throws IOException {
+            int[] kept = new int[in.readInt()];
+            for (int i = 0; i < kept.length; i++) kept[i] = in.readInt();
+            String[] inserted = new String[in.readInt()];
+            for (int i = 0; i < inserted.length; i++) inserted[i] = in.readUTF();
+            int[] nodes = new int[in.readInt()];
+            for (int i = 0; i < nodes.length; i++) nodes[i] = in.readInt();
+            return new Entry(kept, inserted, nodes);
+        }
+    }
+
+    /** A node of a tree being built from an entry (see Entry.decode) **/
+    private static final class Frame {
+        private final State state;
+        //the trees of the children of the node, and the number built so far
+        private final ParserTreeNode[] children;
+        private int next = 0;
+
+        /** Constructs a node with none of its children built
+         * @param state the state of the node
+         * @param count the number of its children
+         */
+        private Frame(State state, int count){
+            this.state = state;
+            this.children = new ParserTreeNode[count];
+        }
+    }
+
+    /** Returns true if two tokens are the same, in their name, value and position
+     * @param token a token
+     * @param other another token
+     * @return true if they are the same
+     */
+    private static boolean isSame(CFGToken token, CFGToken other){
+        return token.getName().equals(other.getName()) && token.getValue().equals(other.getValue()) &&
+                token.getLineNum() == other.getLineNum() && token.getColNum() == other.getColNum();
+    }
+
+}
@@ -2,12 +2,15 @@ package Compiler.Parser.Matcher;
 
 import Compiler.Parser.CFG.*;
 
-import java.util.ArrayList;
+import java.util.List;
 
 /**
  * A State is a unit data structure in a ChartRow. A State is
  * weakly mutable; its primary fields cannot be changed, but the
  * dot index and row containers can ge changed.
+ * <br>Behind its production, a state is an item of a CompiledGrammar (a production
+ * with a dot position) and the index of its starting row, so comparing states takes
+ * two int comparisons.
  * Created by Matt Levine on 3/13/14.
  */
 public final class State{
@@ -17,47 +20,47 @@ public final class State{
     private final ChartRow start_chartRow;
     private ChartRow end_chartRow;
     private final int dot_index;
-    private final ArrayList<Rule> rules;
+    //the state in integers: its production, item and the index of its starting row
+    private final CompiledGrammar grammar;
+    private final int productionId;
+    private final int item;
+    //the ways the state was derived, for a Builder (see PackedNode)
+    private PackedNode derivations = null;
+    //the Matcher yet to add the states of a right recursion it skipped below this one
+    private Matcher skippedBy = null;
 
     /** Constructs a new State
-     * @param name the name of the state
-     * @param production the rule of the state
+     * @param grammar the compiled grammar of the production
+     * @param productionId the id of the production of the state
+     * @param production the production of the state; the production of the id, or for
+     *                   a scanned token, a production of the token itself
      * @param dot_index the dot index of the state, used in most parsing algorithms
      * @param start_chartRow the starting row for the state
      */
-    public State(String name, Production production, int dot_index, ChartRow start_chartRow){
-        this.name = name;
+    State(CompiledGrammar grammar, int productionId, Production production, int dot_index,
+          ChartRow start_chartRow){
+        this.grammar = grammar;
+        this.productionId = productionId;
+        this.item = grammar.getItem(productionId, dot_index);
+        this.name = grammar.getName(grammar.getLeft(productionId));
         this.production = production;
         this.start_chartRow = start_chartRow;
         this.end_chartRow = null;
         this.dot_index = dot_index;
-
-        this.rules = new ArrayList<>();
-        for (Termable rule : production)
-            if (rule instanceof Rule)
-                this.rules.add((Rule) rule);
     }
 
-    /** Returns a hash for the state uniquely defined by the name, production,
-     * starting and ending rows, dot-index, and rules. Two States with those
-     * fields equal by their respective equivalence definitions are considered
-     * equal classes. See: equals.
+    /** Returns a hash for the state, uniquely defined by its item (the production and
+     * dot-index) and its starting row. See: equals.
      * @return hash for the state
      */
     @Override
     public int hashCode() {
-        int result = name != null ? name.hashCode() : 0;
-        result = 31 * result + (production != null ? production.hashCode() : 0);
-        result = 31 * result + (start_chartRow != null ? start_chartRow.hashCode() : 0);
-        result = 31 * result + (end_chartRow != null ? end_chartRow.hashCode() : 0);
-        result = 31 * result + dot_index;
-        result = 31 * result + (rules.hashCode());
-        return result;
+        return 31 * item + start_chartRow.getIndex();
     }
 
     /** Returns true if the given state is equal to this state, defined by the
-     * dot index, starting rows, name, and production under their respective
-     * equivalence definitions. Follows Java equals specifications. See hash.
+     * item (production and dot index) and starting row. Follows Java equals
+     * specifications. See hash.
      * @param o the object to check equivalence to
      * @return true if the given obejct equals this one
      */
@@ -68,9 +71,76 @@ public final class State{
 
         State state = (State) o;
 
-        return dot_index == state.dot_index && start_chartRow.equals(state.start_chartRow)
-                && name.equals(state.name) && production.equals(state.production);
+        return item == state.item && grammar == state.grammar &&
+                start_chartRow.getIndex() == state.start_chartRow.getIndex();
+
+    }
+
+    /** Returns the state packed into a long: its item and the id of its starting
+     * row. Two states of a row are equal if and only if their keys are.
+     * @return the key of the state
+     */
+    long getKey(){return key(item, start_chartRow.getId());}
+
+    /** Returns the item of the state: its production and dot position
+     * @return the item id
+     */
+    int getItem(){return item;}
+
+    /** Returns the key of a state with the given item and starting row
+     * @param item the item of the state
+     * @param origin the id of the starting row of the state
+     * @return the key of the state
+     */
+    static long key(int item, int origin){return ((long) item << 32) | origin;}
+
+    /** Returns the compiled grammar of the state's production
+     * @return the compiled grammar
+     */
+    CompiledGrammar getGrammar(){return grammar;}
+
+    /** Records a way of deriving the state
+     * @param predecessor the state before the dot was moved
+     * @param child the completed state of the term the dot was moved over
+     */
+    void derive(State predecessor, State child){
+        derivations = new PackedNode(predecessor, child, derivations);
+    }
+
+    /** Forgets the ways the state was derived **/
+    void clearDerivations(){derivations = null;}
+
+    /** Returns true if the given way of deriving the state has been recorded
+     * @param predecessor the state before the dot was moved
+     * @param child the completed state of the term the dot was moved over
+     * @return true if the state has the derivation
+     */
+    boolean isDerivedBy(State predecessor, State child){
+        for (PackedNode derivation = derivations; derivation != null;
+             derivation = derivation.getNext())
+            if (derivation.getPredecessor() == predecessor && derivation.getChild() == child)
+                return true;
+        return false;
+    }
+
+    /** Marks the state as the top of a right recursion a Matcher skipped, whose states
+     * the Matcher adds to the row before the derivations of the state are read
+     * @param matcher the Matcher, or null once it has added them
+     */
+    void setSkippedBy(Matcher matcher){skippedBy = matcher;}
 
+    /** Returns the ways the state was derived, the latest first. Only a Matcher with a
+     * Builder records them; the states it predicts and scans have none. The states of a
+     * right recursion skipped below the state are added to its row first (see Matcher).
+     * @return the first derivation, or null if there are none
+     */
+    public PackedNode getDerivations(){
+        if (skippedBy != null){
+            Matcher matcher = skippedBy;
+            skippedBy = null;
+            matcher.expandLeoLinks(this);
+        }
+        return derivations;
     }
 
     /** Returns true if the dot of the state has reached the end of the production
@@ -89,6 +159,37 @@ public final class State{
         return production.get(dot_index);
     }
 
+    /** Returns the encoded next term of the production (see CompiledGrammar.getTerms);
+     * the state must not be completed
+     * @return the next term, a symbol id for a rule and a complemented one for a token
+     */
+    int nextTerm(){return grammar.getTerms(productionId)[dot_index];}
+
+    /** Returns the position of the dot in the production
+     * @return the number of terms before the dot
+     */
+    int getDot(){return dot_index;}
+
+    /** Returns true if the dot was last moved over a token, by scanning
+     * @return true if the term before the dot is a token
+     */
+    boolean scanned(){return dot_index > 0 && grammar.getTerms(productionId)[dot_index - 1] < 0;}
+
+    /** Returns true if the next term of the production is its last one
+     * @return true if the state is one step from completion
+     */
+    boolean nextIsLast(){return dot_index == production.size() - 1;}
+
+    /** Returns the symbol id of the rule of the state
+     * @return the symbol of the state
+     */
+    int getSymbol(){return grammar.getLeft(productionId);}
+
+    /** Returns the id of the production of the state in its compiled grammar
+     * @return the production id
+     */
+    public int getProductionId(){return productionId;}
+
     /** Sets the end row of the state
      * @param chartRow the new end row the state
      */
@@ -101,7 +202,7 @@ public final class State{
      * @return an incremented state
      */
     public State getDotIncrementedState(Production production){
-        return new State(name,production, dot_index + 1, start_chartRow);
+        return new State(grammar, productionId, production, dot_index + 1, start_chartRow);
     }
 
     /** Returns the starting row of the state
@@ -126,8 +227,8 @@ public final class State{
     /** returns the rules of the state
      * @return the state rules
      */
-    public ArrayList<Rule> getRules() {
-        return rules;
+    public List<Rule> getRules() {
+        return grammar.getRules(productionId);
     }
 
     /** Returns the ending row of the chart
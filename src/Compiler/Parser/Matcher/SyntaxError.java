@@ -0,0 +1,69 @@
+package Compiler.Parser.Matcher;
+
+import Compiler.Parser.CFG.CFGToken;
+
+/**
+ * An error a Matcher recovered from (see Matcher.getErrors): a run of tokens of the
+ * input that no derivation could reach and that were skipped, or a token the input
+ * lacked at its end, which was put in. A SyntaxError is immutable.
+ */
+public final class SyntaxError {
+
+    private final CFGToken token;
+    private final String expected;
+    private final int skipped;
+
+    /** Constructs an error
+     * @param token the first token skipped, or the last token of the input before the
+     *              one put in, or null if there was none
+     * @param expected the name of the token put in, or null if tokens were skipped
+     * @param skipped the number of tokens skipped
+     */
+    SyntaxError(CFGToken token, String expected, int skipped){
+        this.token = token;
+        this.expected = expected;
+        this.skipped = skipped;
+    }
+
+    /** Returns the token of the error: the first token skipped, or the token the missing
+     * one should have followed
+     * @return the token, or null if a token was missing from an empty input
+     */
+    public CFGToken getToken(){return token;}
+
+    /** Returns the name of the token the input lacked
+     * @return the name of the token put in, or null if tokens were skipped
+     */
+    public String getExpected(){return expected;}
+
+    /** Returns the number of tokens skipped
+     * @return the number of tokens skipped, 0 if a token was put in
+     */
+    public int getSkipped(){return skipped;}
+
+    /** Returns the error with one more token skipped after its own
+     * @return the extended error
+     */
+    SyntaxError skipOne(){return new SyntaxError(token, null, skipped + 1);}
+
+    /** Returns the line of the error
+     * @return the line number of the token of the error, or 1 if there is none
+     */
+    public int getLineNum(){return token == null ? 1 : token.getLineNum();}
+
+    /** Returns a description of the error, for the user
+     * @return the message of the error
+     */
+    public String getMessage(){
+        if (expected == null)
+            return "Parser Error: Cannot resolve token \"" + token.getValue() + "\" on line " +
+                    token.getLineNum() + " in column " + token.getColNum();
+        if (token == null) return "Parser Error: Expected " + expected;
+        return "Parser Error: Expected " + expected + " after \"" + token.getValue() +
+                "\" on line " + token.getLineNum() + " in column " + token.getColNum();
+    }
+
+    @Override
+    public String toString(){return getMessage();}
+
+}
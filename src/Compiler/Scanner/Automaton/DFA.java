@@ -0,0 +1,61 @@
+package Compiler.Scanner.Automaton;
+
+/**
+ * A minimized deterministic automaton over the full char range, produced by the
+ * RegexCompiler. A DFA is immutable and can be shared freely between Scanners
+ * (and threads).
+ * <br>Characters are first mapped to an equivalence class and the transition table is
+ * indexed by state and class, so a step costs two array reads regardless of how many
+ * rules were compiled into the automaton. State {@link #DEAD} is the only state from
+ * which no rule can match or still be in progress.
+ */
+public final class DFA {
+
+    public static final int DEAD = 0;
+
+    private final char[] classes;
+    private final int numClasses;
+    private final int[] transitions;
+    private final int[] acceptingRules;
+    private final int start;
+
+    /** Constructs a new DFA; use a RegexCompiler to build one **/
+    DFA(char[] classes, int numClasses, int[] transitions, int[] acceptingRules, int start){
+        this.classes = classes;
+        this.numClasses = numClasses;
+        this.transitions = transitions;
+        this.acceptingRules = acceptingRules;
+        this.start = start;
+    }
+
+    /** Returns the state the automaton is in before reading any input
+     * @return the start state
+     */
+    public int getStartState(){return start;}
+
+    /** Returns the state reached from the given state on the given character
+     * @param state the current state
+     * @param c the next character
+     * @return the next state, possibly DEAD
+     */
+    public int step(int state, char c){
+        return transitions[state * numClasses + classes[c]];
+    }
+
+    /** Returns the highest-priority rule accepting in the given state
+     * @param state the state
+     * @return the index of the rule, or -1 if the state does not accept
+     */
+    public int getAcceptingRule(int state){return acceptingRules[state];}
+
+    /** Returns the number of states in the automaton
+     * @return the number of states
+     */
+    public int size(){return acceptingRules.length;}
+
+    /** Returns the number of character classes the alphabet was partitioned into
+     * @return the number of character classes
+     */
+    public int getNumClasses(){return numClasses;}
+
+}
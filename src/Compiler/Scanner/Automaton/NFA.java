@@ -0,0 +1,74 @@
+package Compiler.Scanner.Automaton;
+
+import java.util.ArrayList;
+
+/**
+ * A Thompson-style nondeterministic automaton used as the intermediate form between
+ * a lexer regex and the DFA that actually drives the Scanner. An NFA is mutable while
+ * it is being assembled by the RegexCompiler and is thrown away once the DFA exists.
+ * <br>Transitions are labelled by sorted, inclusive character ranges rather than
+ * single characters so that classes like <i>[a-zA-Z]</i> or <i>.</i> stay small.
+ */
+final class NFA {
+
+    private final ArrayList<Node> nodes = new ArrayList<>();
+
+    /** Creates a new state in the automaton
+     * @return the new state
+     */
+    Node newNode(){
+        Node node = new Node(nodes.size());
+        nodes.add(node);
+        return node;
+    }
+
+    /** Returns the state with the given id
+     * @param id the id of the state
+     * @return the state
+     */
+    Node get(int id){return nodes.get(id);}
+
+    /** Returns the number of states in the automaton
+     * @return the number of states
+     */
+    int size(){return nodes.size();}
+
+    /** A single state of the NFA. A state accepts on behalf of at most one rule. **/
+    static final class Node {
+        final int id;
+        int acceptingRule = -1;
+        final ArrayList<Node> epsilons = new ArrayList<>();
+        final ArrayList<int[]> labels = new ArrayList<>();
+        final ArrayList<Node> targets = new ArrayList<>();
+
+        private Node(int id){ this.id = id; }
+
+        /** Adds a transition on the given character ranges
+         * @param ranges sorted inclusive [lo,hi] pairs
+         * @param target the target state
+         */
+        void addEdge(int[] ranges, Node target){
+            labels.add(ranges);
+            targets.add(target);
+        }
+
+        /** Adds an epsilon transition
+         * @param target the target state
+         */
+        void addEpsilon(Node target){ epsilons.add(target); }
+    }
+
+    /** A sub-automaton with a single entry and a single exit, as produced by
+     * Thompson's construction.
+     */
+    static final class Fragment {
+        final Node start;
+        final Node end;
+
+        Fragment(Node start, Node end){
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+}
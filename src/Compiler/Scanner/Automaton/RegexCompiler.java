@@ -0,0 +1,390 @@
+package Compiler.Scanner.Automaton;
+
+import Compiler.Scanner.Automaton.NFA.Fragment;
+import Compiler.Scanner.Automaton.NFA.Node;
+
+import java.util.*;
+
+/**
+ * Compiles a prioritized set of lexer regexes into a single minimized DFA.
+ * <br>Only the subset of java.util.regex syntax that the lexer tables actually use is
+ * understood: literals, escaped meta-characters, <i>\s \d \t \n \r \f</i>, the dot,
+ * bracketed classes (with ranges and negation), grouping, alternation, the
+ * <i>* + ?</i> quantifiers, a leading <i>^</i> and a trailing <i>$</i>. Anything else
+ * is rejected with an exception rather than silently compiled differently.
+ * <br>Every pattern is tagged with the index of its rule; when several rules accept
+ * the same input the rule with the highest index wins, which is the same ordering the
+ * RuleAssembler table has always used ("least prioritized up here").
+ * <br>The DFA reports a state as alive exactly when java.util.regex would report
+ * <i>matches() || hitEnd()</i> for one of the compiled rules, including the quirk that
+ * a trailing <i>$</i> keeps hitting the end across a final line terminator.
+ */
+public final class RegexCompiler {
+
+    private static final int MAX_CHAR = 0xFFFF;
+    private static final int[] DOT = complement(ranges('\n','\n','\r','\r','\u0085','\u0085',
+            '\u2028','\u2029'));
+    private static final int[] WHITESPACE = ranges('\t','\r',' ',' ');
+    private static final int[] DIGITS = ranges('0','9');
+    private static final int[] LINE_TERMINATORS = ranges('\n','\n','\r','\r','\u0085','\u0085',
+            '\u2028','\u2029');
+
+    private final NFA nfa = new NFA();
+    private final Node root = nfa.newNode();
+
+    //parser state for the pattern currently being added
+    private String pattern;
+    private int position;
+    private int depth;
+
+    /** Adds a regex to the automaton on behalf of the given rule
+     * @param regex the regex
+     * @param rule the index of the rule; higher indices take priority
+     */
+    public void add(String regex, int rule){
+        pattern = regex;
+        position = depth = 0;
+        Fragment fragment = parseAlternation();
+        if (position != pattern.length())
+            throw new RuntimeException("Unsupported lexer regex \""+regex+"\" at "+position);
+        root.addEpsilon(fragment.start);
+        fragment.end.acceptingRule = rule;
+    }
+
+    /** Builds the minimized DFA for all regexes added so far
+     * @return the DFA
+     */
+    public DFA compile(){
+        //partition the alphabet into classes that no transition distinguishes
+        TreeSet<Integer> cuts = new TreeSet<>();
+        cuts.add(0);
+        cuts.add(MAX_CHAR + 1);
+        for (int i = 0; i < nfa.size(); i++)
+            for (int[] label : nfa.get(i).labels)
+                for (int r = 0; r < label.length; r += 2){
+                    cuts.add(label[r]);
+                    cuts.add(label[r+1] + 1);
+                }
+        char[] classes = new char[MAX_CHAR + 1];
+        int numClasses = 0;
+        Iterator<Integer> cutIterator = cuts.iterator();
+        int low = cutIterator.next();
+        while (cutIterator.hasNext()){
+            int high = cutIterator.next();
+            Arrays.fill(classes, low, high, (char) numClasses++);
+            low = high;
+        }
+
+        //subset construction; the empty set is the dead state
+        ArrayList<BitSet> sets = new ArrayList<>();
+        HashMap<BitSet,Integer> ids = new HashMap<>();
+        ArrayList<int[]> moves = new ArrayList<>();
+        sets.add(new BitSet());
+        ids.put(new BitSet(), DFA.DEAD);
+        BitSet startSet = new BitSet();
+        startSet.set(root.id);
+        closure(startSet);
+        int start = idOf(startSet, sets, ids);
+
+        BitSet[] buckets = new BitSet[numClasses];
+        for (int s = 0; s < sets.size(); s++){
+            BitSet set = sets.get(s);
+            for (int k = 0; k < numClasses; k++) buckets[k] = null;
+            for (int n = set.nextSetBit(0); n >= 0; n = set.nextSetBit(n+1)){
+                Node node = nfa.get(n);
+                for (int e = 0; e < node.labels.size(); e++){
+                    int[] label = node.labels.get(e);
+                    for (int r = 0; r < label.length; r += 2)
+                        for (int k = classes[label[r]]; k <= classes[label[r+1]]; k++){
+                            if (buckets[k] == null) buckets[k] = new BitSet();
+                            buckets[k].set(node.targets.get(e).id);
+                        }
+                }
+            }
+            int[] move = new int[numClasses];
+            for (int k = 0; k < numClasses; k++){
+                if (buckets[k] == null) continue;
+                closure(buckets[k]);
+                move[k] = idOf(buckets[k], sets, ids);
+            }
+            moves.add(move);
+        }
+
+        int[] accepting = new int[sets.size()];
+        for (int s = 0; s < sets.size(); s++){
+            accepting[s] = -1;
+            BitSet set = sets.get(s);
+            for (int n = set.nextSetBit(0); n >= 0; n = set.nextSetBit(n+1))
+                accepting[s] = Math.max(accepting[s], nfa.get(n).acceptingRule);
+        }
+
+        return minimize(classes, numClasses, moves, accepting, start);
+    }
+
+    /** Merges equivalent DFA states with Moore's partition refinement. States are
+     * initially split by the rule they accept and by whether they are dead, so a
+     * live-but-hopeless state (a trailing <i>$</i> after a line terminator) is never
+     * merged into the dead state.
+     */
+    private static DFA minimize(char[] classes, int numClasses, ArrayList<int[]> moves,
+                                int[] accepting, int start){
+        int n = moves.size();
+        int[] block = new int[n];
+        HashMap<String,Integer> keys = new HashMap<>();
+        for (int s = 0; s < n; s++){
+            String key = s == DFA.DEAD ? "dead" : String.valueOf(accepting[s]);
+            Integer b = keys.get(key);
+            if (b == null) keys.put(key, b = keys.size());
+            block[s] = b;
+        }
+
+        int numBlocks = keys.size();
+        while (true){
+            keys.clear();
+            int[] refined = new int[n];
+            int[] signature = new int[numClasses + 1];
+            for (int s = 0; s < n; s++){
+                signature[0] = block[s];
+                for (int k = 0; k < numClasses; k++) signature[k+1] = block[moves.get(s)[k]];
+                String key = Arrays.toString(signature);
+                Integer b = keys.get(key);
+                if (b == null) keys.put(key, b = keys.size());
+                refined[s] = b;
+            }
+            block = refined;
+            if (keys.size() == numBlocks) break;
+            numBlocks = keys.size();
+        }
+
+        //renumber so the dead block keeps id 0
+        int[] renumber = new int[numBlocks];
+        Arrays.fill(renumber, -1);
+        renumber[block[DFA.DEAD]] = DFA.DEAD;
+        int next = 1;
+        for (int s = 0; s < n; s++)
+            if (renumber[block[s]] == -1) renumber[block[s]] = next++;
+
+        int[] transitions = new int[numBlocks * numClasses];
+        int[] acceptingRules = new int[numBlocks];
+        for (int s = 0; s < n; s++){
+            int state = renumber[block[s]];
+            acceptingRules[state] = accepting[s];
+            for (int k = 0; k < numClasses; k++)
+                transitions[state * numClasses + k] = renumber[block[moves.get(s)[k]]];
+        }
+        return new DFA(classes, numClasses, transitions, acceptingRules, renumber[block[start]]);
+    }
+
+    /** Returns the DFA id of the given (closed) NFA state set, registering it if new **/
+    private static int idOf(BitSet set, ArrayList<BitSet> sets, HashMap<BitSet,Integer> ids){
+        Integer id = ids.get(set);
+        if (id == null){
+            id = sets.size();
+            sets.add(set);
+            ids.put(set, id);
+        }
+        return id;
+    }
+
+    /** Extends the given set of NFA states with everything reachable over epsilons **/
+    private void closure(BitSet set){
+        ArrayDeque<Node> stack = new ArrayDeque<>();
+        for (int n = set.nextSetBit(0); n >= 0; n = set.nextSetBit(n+1)) stack.push(nfa.get(n));
+        while (!stack.isEmpty()){
+            for (Node target : stack.pop().epsilons){
+                if (!set.get(target.id)){
+                    set.set(target.id);
+                    stack.push(target);
+                }
+            }
+        }
+    }
+
+    // -- Parsing: alternation := concatenation ('|' concatenation)*
+
+    private Fragment parseAlternation(){
+        Fragment left = parseConcatenation();
+        while (position < pattern.length() && pattern.charAt(position) == '|'){
+            position++;
+            Fragment right = parseConcatenation();
+            Node start = nfa.newNode(), end = nfa.newNode();
+            start.addEpsilon(left.start);
+            start.addEpsilon(right.start);
+            left.end.addEpsilon(end);
+            right.end.addEpsilon(end);
+            left = new Fragment(start, end);
+        }
+        return left;
+    }
+
+    private Fragment parseConcatenation(){
+        Node start = nfa.newNode();
+        Fragment result = new Fragment(start, start);
+        while (position < pattern.length()){
+            char c = pattern.charAt(position);
+            if (c == '|' || c == ')') break;
+            Fragment next = c == '$' ? parseEndAnchor() : parseRepetition();
+            result.end.addEpsilon(next.start);
+            result = new Fragment(result.start, next.end);
+        }
+        return result;
+    }
+
+    private Fragment parseRepetition(){
+        Fragment atom = parseAtom();
+        while (position < pattern.length()){
+            char c = pattern.charAt(position);
+            if (c != '*' && c != '+' && c != '?') break;
+            position++;
+            Node start = nfa.newNode(), end = nfa.newNode();
+            start.addEpsilon(atom.start);
+            atom.end.addEpsilon(end);
+            if (c != '+') start.addEpsilon(end);
+            if (c != '?') atom.end.addEpsilon(atom.start);
+            atom = new Fragment(start, end);
+        }
+        return atom;
+    }
+
+    private Fragment parseAtom(){
+        char c = pattern.charAt(position++);
+        switch (c){
+            case '(':
+                depth++;
+                Fragment group = parseAlternation();
+                if (position >= pattern.length() || pattern.charAt(position) != ')')
+                    throw new RuntimeException("Unbalanced group in lexer regex \""+pattern+"\"");
+                position++;
+                depth--;
+                return group;
+            case '[':
+                return edge(parseClass());
+            case '.':
+                return edge(DOT);
+            case '\\':
+                return edge(parseEscape());
+            case '^':
+                if (position != 1)
+                    throw new RuntimeException("Unsupported use of ^ in lexer regex \""+pattern+"\"");
+                Node empty = nfa.newNode();
+                return new Fragment(empty, empty);
+            case '*': case '+': case '?': case '{': case ')':
+                throw new RuntimeException("Unsupported lexer regex \""+pattern+"\" at "+(position-1));
+            default:
+                return edge(ranges(c, c));
+        }
+    }
+
+    /** A non-multiline <i>$</i>. It matches at the end of input; it also keeps the
+     * matcher at the end (without matching) across one final line terminator, which is
+     * what makes a line comment swallow its newline.
+     */
+    private Fragment parseEndAnchor(){
+        position++;
+        if (depth != 0 || (position < pattern.length() && pattern.charAt(position) != '|'))
+            throw new RuntimeException("Unsupported use of $ in lexer regex \""+pattern+"\"");
+        Node start = nfa.newNode(), ghost = nfa.newNode(), carriage = nfa.newNode();
+        start.addEdge(LINE_TERMINATORS, ghost);
+        start.addEdge(ranges('\r','\r'), carriage);
+        carriage.addEdge(ranges('\n','\n'), ghost);
+        return new Fragment(start, start);
+    }
+
+    private int[] parseClass(){
+        boolean negated = position < pattern.length() && pattern.charAt(position) == '^';
+        if (negated) position++;
+        int[] result = new int[0];
+        boolean first = true;
+        while (position < pattern.length() && (first || pattern.charAt(position) != ']')){
+            first = false;
+            char c = pattern.charAt(position++);
+            int[] item;
+            if (c == '\\') item = parseEscape();
+            else if (position + 1 < pattern.length() && pattern.charAt(position) == '-'
+                    && pattern.charAt(position+1) != ']'){
+                char high = pattern.charAt(position+1);
+                position += 2;
+                item = ranges(c, high);
+            }else item = ranges(c, c);
+            result = union(result, item);
+        }
+        if (position >= pattern.length())
+            throw new RuntimeException("Unterminated class in lexer regex \""+pattern+"\"");
+        position++;
+        return negated ? complement(result) : result;
+    }
+
+    private int[] parseEscape(){
+        if (position >= pattern.length())
+            throw new RuntimeException("Dangling escape in lexer regex \""+pattern+"\"");
+        char c = pattern.charAt(position++);
+        switch (c){
+            case 's': return WHITESPACE;
+            case 'd': return DIGITS;
+            case 't': return ranges('\t','\t');
+            case 'n': return ranges('\n','\n');
+            case 'r': return ranges('\r','\r');
+            case 'f': return ranges('\f','\f');
+            default:
+                if (Character.isLetterOrDigit(c))
+                    throw new RuntimeException("Unsupported escape \\"+c+" in lexer regex \""
+                            +pattern+"\"");
+                return ranges(c, c);
+        }
+    }
+
+    /** Returns a two-state fragment consuming one character from the given ranges **/
+    private Fragment edge(int[] ranges){
+        Node start = nfa.newNode(), end = nfa.newNode();
+        start.addEdge(ranges, end);
+        return new Fragment(start, end);
+    }
+
+    // -- Character range arithmetic on sorted, inclusive [lo,hi] pairs
+
+    private static int[] ranges(int... bounds){
+        int[] result = new int[0];
+        for (int i = 0; i < bounds.length; i += 2)
+            result = union(result, new int[]{bounds[i], bounds[i+1]});
+        return result;
+    }
+
+    private static int[] union(int[] a, int[] b){
+        int[] merged = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, merged, a.length, b.length);
+        Integer[] order = new Integer[merged.length / 2];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        Arrays.sort(order, (x, y) -> Integer.compare(merged[2*x], merged[2*y]));
+
+        int[] result = new int[merged.length];
+        int size = 0;
+        for (int i : order){
+            int lo = merged[2*i], hi = merged[2*i+1];
+            if (size > 0 && lo <= result[size-1] + 1)
+                result[size-1] = Math.max(result[size-1], hi);
+            else{
+                result[size++] = lo;
+                result[size++] = hi;
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    private static int[] complement(int[] a){
+        int[] result = new int[a.length + 2];
+        int size = 0, next = 0;
+        for (int i = 0; i < a.length; i += 2){
+            if (a[i] > next){
+                result[size++] = next;
+                result[size++] = a[i] - 1;
+            }
+            next = a[i+1] + 1;
+        }
+        if (next <= MAX_CHAR){
+            result[size++] = next;
+            result[size++] = MAX_CHAR;
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+}
@@ -0,0 +1,158 @@
+package Compiler.Scanner;
+
+import java.util.List;
+
+/**
+ * This class is designed to keep the tokens of a document up to date while it is being
+ * edited, without re-scanning the whole document on every change. The tokens include
+ * whitespace and comments, exactly as a Scanner returns them when asked for whitespace.
+ * <br>An edit is re-scanned from the last token that cannot have been affected by it (a
+ * token also depends on the one char following it) until the new tokens line up with a
+ * token boundary of the old stream past the edit; from there on the old tokens are kept,
+ * and only moved if their line or column changed.
+ */
+public final class IncrementalScanner {
+
+    private String text;
+    private final TokenBuffer tokens;
+    private final LineIndex lineIndex = new LineIndex();
+    private final ScanContext context = new ScanContext();
+
+    /** Creates the scanner and scans the initial text in full
+     * @param text the initial text of the document
+     */
+    public IncrementalScanner( String text ){
+        this.text = text;
+        tokens = new TokenBuffer(text, 16);
+        tokens.setLineIndex(lineIndex);
+        lineIndex.edit(0, 0, text, text.length());
+        rescan(0, Integer.MAX_VALUE, 0, 0);
+    }
+
+    /** Returns the current text of the document
+     * @return the text of the document
+     */
+    public String getText(){return text;}
+
+    /** Returns the index of the lines of the current text. The index is updated in
+     * place by later edits.
+     * @return the index of the lines
+     */
+    public LineIndex getLineIndex(){return lineIndex;}
+
+    /** Returns the tokens of the current text, including whitespace and comments.
+     * The buffer is updated in place by later edits.
+     * @return the tokens
+     */
+    public TokenBuffer getBuffer(){return tokens;}
+
+    /** Returns the tokens of the current text, including whitespace and comments
+     * @return a read-only view of the tokens
+     */
+    public List<LexerToken> getTokens(){return tokens.asList();}
+
+    /** Returns the offset in the text of the first char of the token at the given index
+     * @param index the index of the token
+     * @return the offset of the token
+     */
+    public int getStart( int index ){return tokens.getStart(index);}
+
+    /** Replaces the text with the given text, re-scanning only the range that differs
+     * from the current text.
+     * @param newText the new text of the document
+     */
+    public void setText( String newText ){
+        if (newText.equals(text)) return;
+        int prefix = 0, limit = Math.min(text.length(), newText.length());
+        while (prefix < limit && text.charAt(prefix) == newText.charAt(prefix)) prefix++;
+        int suffix = 0;
+        limit -= prefix;
+        while (suffix < limit && text.charAt(text.length() - 1 - suffix) ==
+                newText.charAt(newText.length() - 1 - suffix)) suffix++;
+        apply(newText, prefix, text.length() - prefix - suffix,
+                newText.length() - prefix - suffix);
+    }
+
+    /** Applies an edit to the text and updates the tokens accordingly.
+     * @param offset the offset of the edit
+     * @param removedLength the number of chars removed at the offset
+     * @param insertedText the text inserted at the offset
+     */
+    public void edit( int offset, int removedLength, String insertedText ){
+        if (offset < 0 || removedLength < 0 || offset + removedLength > text.length())
+            throw new IndexOutOfBoundsException("Edit " + offset + "+" + removedLength +
+                    " outside of text of length " + text.length());
+        apply(text.substring(0, offset) + insertedText + text.substring(offset + removedLength),
+                offset, removedLength, insertedText.length());
+    }
+
+    /** Installs the edited text and re-scans the edited range
+     * @param newText the text after the edit
+     * @param offset the offset of the edit
+     * @param removedLength the number of chars removed at the offset
+     * @param insertedLength the number of chars inserted at the offset
+     */
+    private void apply( String newText, int offset, int removedLength, int insertedLength ){
+        text = newText;
+        tokens.setSource(newText);
+        lineIndex.edit(offset, removedLength, newText, insertedLength);
+        //the first token whose end, or the char following it, was touched
+        int first = 0, high = tokens.size();
+        while (first < high){
+            int mid = (first + high) >>> 1;
+            if (tokens.getEnd(mid) < offset) first = mid + 1;
+            else high = mid;
+        }
+        rescan(first, offset + removedLength, insertedLength - removedLength, first);
+    }
+
+    /** Re-scans from the start of the given token until the new tokens line up with the
+     * old ones at or past the given offset, then splices them in.
+     * @param first the index of the first token to re-scan
+     * @param unchanged the offset in the old text from which it is unchanged
+     * @param delta the change in length of the text
+     * @param oldIndex the index of the first old token that might line up
+     */
+    private void rescan( int first, int unchanged, int delta, int oldIndex ){
+        int position = first == 0 ? 0 : tokens.getEnd(first - 1);
+        int line = first == 0 ? 1 : tokens.getLineNum(first - 1);
+        int col = first == 0 ? 0 : tokens.getColNum(first - 1);
+        Scanner scanner = new Scanner(text, position, line, col, context);
+
+        TokenBuffer scanned = new TokenBuffer(text, 16);
+        int old = oldIndex;
+        while (true){
+            //line up with the old stream on a boundary in the unchanged text
+            int oldPosition = position - delta;
+            if (oldPosition >= unchanged){
+                while (old < tokens.size() && tokens.getStart(old) < oldPosition) old++;
+                if (old < tokens.size() ? tokens.getStart(old) == oldPosition :
+                        position == text.length())
+                    break;
+            }
+            if (!scanner.scanNext(scanned)){
+                old = tokens.size();
+                break;
+            }
+            position = scanner.getPosition();
+            line = scanned.getLineNum(scanned.size() - 1);
+            col = scanned.getColNum(scanned.size() - 1);
+        }
+
+        //where the old tokens that are kept used to pick up from
+        int lineShift = line - (old == 0 ? 1 : tokens.getLineNum(old - 1));
+        int colShift = col - (old == 0 ? 0 : tokens.getColNum(old - 1));
+
+        tokens.replace(first, old, scanned);
+        tokens.shiftOffsets(first + scanned.size(), delta);
+
+        //move the kept tokens; columns only carry over until the first line break
+        for (int i = first + scanned.size(); i < tokens.size() &&
+                (lineShift != 0 || colShift != 0); i++){
+            boolean lineBreak = colShift != 0 && tokens.containsLineBreak(i);
+            tokens.shiftPosition(i, lineShift, lineBreak ? 0 : colShift);
+            if (lineBreak) colShift = 0;
+        }
+    }
+
+}
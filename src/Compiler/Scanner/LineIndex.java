@@ -0,0 +1,100 @@
+package Compiler.Scanner;
+
+import java.util.Arrays;
+
+/**
+ * This class is designed to map between offsets in a text and line/column positions.
+ * It stores the offset at which each line starts, and is filled in by the Scanner as it
+ * advances, so a document's lines are found once and then shared by every layer that
+ * needs them (the scanner, the token buffer and the GUI) instead of each one recounting
+ * them from strings.
+ * <br>Lines are numbered from 1, as in LexerTokens; columns are offsets from the start of
+ * their line, counting from 0. Finding the line of an offset takes O(log n), finding the
+ * offset of a line takes O(1).
+ */
+public final class LineIndex {
+
+    //offset of the first char of each line; the first line always starts at 0
+    private int[] starts = new int[16];
+    private int count = 1;
+
+    /** Returns the number of lines in the text
+     * @return the number of lines
+     */
+    public int getLineCount(){return count;}
+
+    /** Returns the offset of the first char of the given line
+     * @param line the line number, from 1
+     * @return the offset at which the line starts
+     */
+    public int getLineStart( int line ){
+        if (line < 1 || line > count)
+            throw new IndexOutOfBoundsException("Line " + line + " of " + count);
+        return starts[line - 1];
+    }
+
+    /** Returns the line containing the given offset
+     * @param offset the offset in the text
+     * @return the line number, from 1
+     */
+    public int getLineOf( int offset ){
+        if (offset < 0) throw new IndexOutOfBoundsException("Offset " + offset);
+        //the last line starting at or before the offset
+        int low = 0, high = count - 1;
+        while (low < high){
+            int mid = (low + high + 1) >>> 1;
+            if (starts[mid] <= offset) low = mid;
+            else high = mid - 1;
+        }
+        return low + 1;
+    }
+
+    /** Returns the column of the given offset within its line
+     * @param offset the offset in the text
+     * @return the column, from 0
+     */
+    public int getColumnOf( int offset ){
+        return offset - starts[getLineOf(offset) - 1];
+    }
+
+    /** Returns the offset of the given line and column
+     * @param line the line number, from 1
+     * @param column the column, from 0
+     * @return the offset in the text
+     */
+    public int getOffsetOf( int line, int column ){
+        return getLineStart(line) + column;
+    }
+
+    /** Records that a line starts at the given offset; lines must be added in order
+     * @param start the offset just past a line break
+     */
+    void add( int start ){
+        if (count == starts.length) starts = Arrays.copyOf(starts, count * 2);
+        starts[count++] = start;
+    }
+
+    /** Updates the index for an edit of the text
+     * @param offset the offset of the edit
+     * @param removedLength the number of chars removed at the offset
+     * @param text the text after the edit
+     * @param insertedLength the number of chars inserted at the offset
+     */
+    void edit( int offset, int removedLength, CharSequence text, int insertedLength ){
+        //the lines whose line break was removed
+        int from = getLineOf(offset), to = getLineOf(offset + removedLength);
+        int added = 0;
+        for (int i = offset; i < offset + insertedLength; i++)
+            if (text.charAt(i) == '\n') added++;
+
+        int newCount = count - (to - from) + added;
+        if (newCount > starts.length) starts = Arrays.copyOf(starts, Math.max(newCount, count * 2));
+        System.arraycopy(starts, to, starts, from + added, count - to);
+        for (int i = from + added; i < newCount; i++)
+            starts[i] += insertedLength - removedLength;
+        for (int i = offset, line = from; i < offset + insertedLength; i++)
+            if (text.charAt(i) == '\n') starts[line++] = i + 1;
+        count = newCount;
+    }
+
+}
@@ -0,0 +1,186 @@
+package Compiler.Scanner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * This class is designed to scan a large text in chunks on a ForkJoinPool. A cheap
+ * pre-pass over the chars finds the lines of the text and picks the boundaries of the
+ * chunks: newlines that are outside of strings, characters and block comments, after
+ * which a scan cannot depend on anything before them. Each chunk is then scanned by its
+ * own Scanner, starting at the line of its boundary.
+ * <br>The chunks are stitched together in order. The pre-pass follows the delimiters the
+ * way the literal rules do, but a chunk is only trusted once the tokens before it are
+ * seen to end exactly at its boundary; where they do not (a token running on past the
+ * boundary, e.g. a malformed literal), the text is scanned sequentially until it lines up
+ * with a token of the chunk again. The result is always the sequential scanner's.
+ */
+final class ParallelScan {
+
+    /** The number of chars after which a chunk looks for its boundary **/
+    static final int CHUNK_SIZE = 1 << 16;
+
+    //states of the pre-pass
+    private static final int CODE = 0, STRING = 1, CHARACTER = 2, LINE_COMMENT = 3,
+            BLOCK_COMMENT = 4;
+
+    private ParallelScan(){}
+
+    /** Scans the text into a buffer, scanning chunks of it in parallel
+     * @param text the input for the scanner
+     * @param giveWhitespace if true, include whitespace and comment tokens
+     * @param pool the pool on which to scan the chunks
+     * @param chunkSize the number of chars after which a chunk looks for its boundary
+     * @return the tokens of the text
+     */
+    static TokenBuffer scan( CharSequence text, boolean giveWhitespace, ForkJoinPool pool,
+                             int chunkSize ){
+        if (text.length() < 2 * chunkSize) return new TokenBuffer(text, giveWhitespace);
+
+        LineIndex lineIndex = new LineIndex();
+        int[] boundaries = findBoundaries(text, chunkSize, lineIndex);
+        List<ForkJoinTask<TokenBuffer>> chunks = new ArrayList<>(boundaries.length - 1);
+        for (int k = 0; k < boundaries.length - 1; k++){
+            final int from = boundaries[k], to = boundaries[k + 1];
+            chunks.add(pool.submit(() -> scanChunk(text, from, to, lineIndex)));
+        }
+
+        TokenBuffer tokens = new TokenBuffer(text, text.length() / 4);
+        tokens.setLineIndex(lineIndex);
+        TokenBuffer scratch = new TokenBuffer(text, 1);
+        Scanner sequential = null;
+        //the end of the last token stitched, and the position the scanner had there
+        int position = 0, line = 1, col = 0;
+        for (int k = 0; k <= chunks.size(); k++){
+            TokenBuffer chunk = k < chunks.size() ? chunks.get(k).join() : null;
+            int first = 0;
+            while (true){
+                if (chunk != null){
+                    while (first < chunk.size() && chunk.getStart(first) < position) first++;
+                    //the chunk lines up, or has been passed entirely
+                    if (first == chunk.size() || chunk.getStart(first) == position) break;
+                }else if (position == text.length()) break;
+
+                //the last token ran past the boundary; go on one token at a time
+                if (sequential == null || sequential.getPosition() != position)
+                    sequential = new Scanner(text, position, line, col,
+                            ScanContext.forCurrentThread());
+                scratch.clear();
+                sequential.scanNext(scratch);
+                tokens.append(scratch, 0, giveWhitespace);
+                position = scratch.getEnd(0);
+                line = scratch.getLineNum(0);
+                col = scratch.getColNum(0);
+            }
+            if (chunk != null && first < chunk.size()){
+                tokens.append(chunk, first, giveWhitespace);
+                int last = chunk.size() - 1;
+                position = chunk.getEnd(last);
+                line = chunk.getLineNum(last);
+                col = chunk.getColNum(last);
+            }
+        }
+        return tokens;
+    }
+
+    /** Scans the tokens starting from the given boundary up to the first one that ends
+     * at or past the next boundary. Whitespace and comments are included.
+     * @param text the input for the scanner
+     * @param from the boundary at which the chunk starts
+     * @param to the boundary at which the next chunk starts
+     * @param lineIndex the lines of the text
+     * @return the tokens of the chunk
+     */
+    private static TokenBuffer scanChunk( CharSequence text, int from, int to, LineIndex lineIndex ){
+        //a boundary follows a newline, so the token before it left the column at 1
+        ScanContext context = ScanContext.forCurrentThread();
+        Scanner scanner = from == 0 ? new Scanner(text, 0, 1, 0, context) :
+                new Scanner(text, from, lineIndex.getLineOf(from), 1, context);
+        TokenBuffer tokens = new TokenBuffer(text, (to - from) / 4);
+        while (scanner.getPosition() < to && scanner.scanNext(tokens));
+        return tokens;
+    }
+
+    /** Finds the boundaries of the chunks of the text, and records its lines. A boundary
+     * directly follows a newline that is outside of any literal or block comment. Once a
+     * literal runs into a line break, it is taken to run on to the end of the text, and
+     * no more boundaries are picked.
+     * @param text the text
+     * @param chunkSize the number of chars after which a chunk looks for its boundary
+     * @param lineIndex the index to which to add the lines of the text
+     * @return the boundaries, starting with 0 and ending with the length of the text
+     */
+    private static int[] findBoundaries( CharSequence text, int chunkSize, LineIndex lineIndex ){
+        int[] boundaries = new int[text.length() / chunkSize + 2];
+        int count = 0;
+        boundaries[count++] = 0;
+
+        int length = text.length(), next = chunkSize, state = CODE;
+        //the content of a character literal: its length and whether it has an escape
+        int content = 0;
+        boolean escaped = false, runaway = false;
+        for (int i = 0; i < length; i++){
+            char c = text.charAt(i);
+            if (c == '\n') lineIndex.add(i + 1);
+            if (runaway) continue;
+
+            switch (state){
+                case CODE:
+                    if (c == '\"') state = STRING;
+                    else if (c == '\''){
+                        state = CHARACTER;
+                        content = 0;
+                        escaped = false;
+                    }else if (c == '/' && i + 1 < length && text.charAt(i + 1) == '/')
+                        state = LINE_COMMENT;
+                    else if (c == '/' && i + 1 < length && text.charAt(i + 1) == '*'){
+                        state = BLOCK_COMMENT;
+                        //the star of the opening also counts toward the closing
+                        i++;
+                    }else if (c == '\n' && i + 1 >= next && i + 1 < length){
+                        boundaries[count++] = i + 1;
+                        next = i + 1 + chunkSize;
+                    }
+                    break;
+                case STRING:
+                    //a quote ends the string token, escaped or not; a string that is
+                    //followed by a line break takes the line break in
+                    if (c == '\n') runaway = true;
+                    else if (c == '\"'){
+                        state = CODE;
+                        runaway = i + 1 < length && text.charAt(i + 1) == '\n';
+                    }
+                    break;
+                case CHARACTER:
+                    if (c == '\n') runaway = true;
+                    else if (c == '\''){
+                        state = CODE;
+                        //a malformed character literal goes on matching as an error
+                        runaway = (i + 1 < length && text.charAt(i + 1) == '\n') ||
+                                content == 0 || content > 2 || (!escaped && content > 1);
+                    }else{
+                        content++;
+                        if (c == '\\') escaped = true;
+                    }
+                    break;
+                case LINE_COMMENT:
+                    if (c == '\n' && i + 1 >= next && i + 1 < length){
+                        boundaries[count++] = i + 1;
+                        next = i + 1 + chunkSize;
+                    }
+                    //the comment ends before any line terminator
+                    if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029')
+                        state = CODE;
+                    break;
+                default:
+                    if (c == '/' && text.charAt(i - 1) == '*') state = CODE;
+            }
+        }
+        boundaries[count++] = length;
+        return Arrays.copyOf(boundaries, count);
+    }
+
+}
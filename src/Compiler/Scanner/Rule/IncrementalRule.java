@@ -0,0 +1,101 @@
+package Compiler.Scanner.Rule;
+
+/**
+ * This class is designed to give a toplevel structure for rules that are recognized by
+ * hand rather than by a regex. An IncrementalRule is fed the candidate token one char at
+ * a time and keeps only a constant amount of state about what it has seen, so scanning
+ * a token of length n costs O(n) instead of re-examining the whole token on every char.
+ * <br>The Rule methods are still supported, but each call to matches re-feeds the given
+ * string from the start; the Scanner uses reset and advance directly.
+ * <br>The state of a token lives in the rule itself, so a rule can only follow one token
+ * at a time; a Scanner works on its own forks of the rules of the table.
+ */
+public abstract class IncrementalRule implements Rule {
+
+    /** Returned by advance if the token can neither match nor be extended to match **/
+    public static final int DEAD = 0;
+    /** Set in the result of advance if the token might still match (hitEnd) **/
+    public static final int VIABLE = 1;
+    /** Set in the result of advance if the token matches the rule **/
+    public static final int MATCH = 2;
+
+    CharSequence source = null; //for anonymous inners
+    int start; //for anonymous inners
+    int length; //for anonymous inners
+    private int lastResult = DEAD;
+
+    /** Begins a new candidate token
+     * @param source the text being scanned
+     * @param start the offset in the text of the first char of the token
+     */
+    public final void reset(CharSequence source, int start){
+        this.source = source;
+        this.start = start;
+        length = 0;
+        restart();
+    }
+
+    /** Appends the next char to the candidate token. The char must be the one
+     * that follows the previously appended char in the source.
+     * @param c the next char
+     * @return DEAD, or a combination of VIABLE and MATCH
+     */
+    public final int advance(char c){
+        length++;
+        int result = step(c);
+        if (result != DEAD) record(result);
+        return result;
+    }
+
+    /** Returns a new rule recognizing the same language, with a state of its own. The
+     * fork shares the configurable style of this rule.
+     * @return a fresh copy of the rule
+     */
+    public abstract IncrementalRule fork();
+
+    /** Clears the state of the recognizer for a new token **/
+    abstract void restart();
+
+    /** Updates the state of the recognizer with the next char of the token; length
+     * already counts the char.
+     * @param c the next char
+     * @return DEAD, or a combination of VIABLE and MATCH
+     */
+    abstract int step(char c);
+
+    /** Updates the id, message and style of the rule to describe the token as it
+     * stands; only called when the token can still match. Does nothing by default.
+     * @param result the result of the last step
+     */
+    void record(int result){}
+
+    /** Returns true iff the string is contained by the language
+     * of the rule
+     * @param s The input string
+     * @return true if the string is contained by the language of the rule
+     */
+    @Override
+    public boolean matches(CharSequence s){
+        String text = s.toString();
+        reset(text, 0);
+        lastResult = DEAD;
+        for (int i = 0; i < text.length(); i++){
+            length++;
+            lastResult = step(text.charAt(i));
+        }
+        if (lastResult != DEAD) record(lastResult);
+        return (lastResult & MATCH) != 0;
+    }
+
+    /** Returns true if the last string given to matches could still be extended
+     * into a match.
+     * @return true if the last string might still match
+     */
+    @Override
+    public boolean hitEnd(){
+        if (source == null)
+            throw new RuntimeException("Match not initialized");
+        return (lastResult & VIABLE) != 0;
+    }
+
+}
@@ -0,0 +1,114 @@
+package Compiler.Scanner.Rule;
+
+import java.util.Arrays;
+
+/**
+ * This class is designed to classify identifiers as keywords after they are scanned,
+ * so the keyword rules need not take part in scanning every char. Each keyword maps to
+ * the index of its rule in the rule table.
+ * <br>The keywords are kept in a perfect hash table: the seed of the hash is searched for
+ * when the table is built so that no two keywords share a slot, and a lookup hashes the
+ * chars of the token once and compares them against at most one keyword.
+ */
+public final class KeywordTable {
+
+    private final char[][] words;
+    private final int[] rules;
+    private final int mask, seed;
+    private final int minLength, maxLength;
+
+    /** Builds the table
+     * @param keywords the keywords
+     * @param ruleIndices the index of the rule of each keyword
+     */
+    KeywordTable( String[] keywords, int[] ruleIndices ){
+        int size = 1;
+        while (size < 2 * keywords.length) size <<= 1;
+        int min = Integer.MAX_VALUE, max = 0;
+        for (String keyword : keywords){
+            min = Math.min(min, keyword.length());
+            max = Math.max(max, keyword.length());
+        }
+        minLength = keywords.length == 0 ? 1 : min;
+        maxLength = max;
+
+        //grow the table until some seed spreads the keywords without collisions
+        char[][] table;
+        int found;
+        while (true){
+            table = new char[size][];
+            found = findSeed(keywords, size, table);
+            if (found != -1) break;
+            size <<= 1;
+        }
+        mask = size - 1;
+        seed = found;
+        words = table;
+        rules = new int[size];
+        Arrays.fill(rules, -1);
+        for (int i = 0; i < keywords.length; i++)
+            rules[hash(keywords[i], 0, keywords[i].length(), seed) & mask] = ruleIndices[i];
+    }
+
+    /** Returns the rule of the keyword spelled by the given range of the text
+     * @param text the text
+     * @param start the offset of the first char of the token
+     * @param end the offset just past the token
+     * @return the index of the rule of the keyword, or -1 if the token is not a keyword
+     */
+    public int lookup( CharSequence text, int start, int end ){
+        int length = end - start;
+        if (length < minLength || length > maxLength) return -1;
+        int slot = hash(text, start, end, seed) & mask;
+        char[] word = words[slot];
+        if (word == null || word.length != length) return -1;
+        for (int i = 0; i < length; i++)
+            if (word[i] != text.charAt(start + i)) return -1;
+        return rules[slot];
+    }
+
+    /** Returns the number of keywords in the table
+     * @return the number of keywords
+     */
+    public int size(){
+        int count = 0;
+        for (char[] word : words) if (word != null) count++;
+        return count;
+    }
+
+    /** Finds a seed for which the keywords hash to distinct slots, and fills the table
+     * @param keywords the keywords
+     * @param size the size of the table
+     * @param table the table to fill
+     * @return the seed, or -1 if no seed was found for this size
+     */
+    private static int findSeed( String[] keywords, int size, char[][] table ){
+        for (int seed = 1; seed < 4096; seed++){
+            Arrays.fill(table, null);
+            boolean collision = false;
+            for (int i = 0; i < keywords.length && !collision; i++){
+                int slot = hash(keywords[i], 0, keywords[i].length(), seed) & (size - 1);
+                if (table[slot] != null) collision = !Arrays.equals(table[slot],
+                        keywords[i].toCharArray());
+                table[slot] = keywords[i].toCharArray();
+            }
+            if (!collision) return seed;
+        }
+        return -1;
+    }
+
+    /** Hashes a range of chars
+     * @param text the text
+     * @param start the offset of the first char
+     * @param end the offset past the last char
+     * @param seed the seed of the hash
+     * @return the hash
+     */
+    private static int hash( CharSequence text, int start, int end, int seed ){
+        int h = seed * (end - start);
+        for (int i = start; i < end; i++)
+            h = (h ^ text.charAt(i)) * 0x01000193;
+        return h ^ (h >>> 15);
+    }
+
+}
@@ -3,9 +3,6 @@ package Compiler.Scanner.Rule;
 import Compiler.Scanner.LexerToken;
 import javafx.beans.property.SimpleStringProperty;
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
 /**
  * Author: Matt
  * Date: 2/23/14
@@ -14,9 +11,11 @@ import java.util.regex.Pattern;
  * mutable token ids, which may lead to less elegant or less efficient code;
  * the RegexRule class is preferable. The class includes factory methods
  * for common child classes.
+ * <br>Each rule is a small state machine over the chars of the token (quote and
+ * escape state for literals, the phase of a numeric literal) and reports the same
+ * ids and messages the rules did when they re-examined the whole token.
 **/
-abstract class MutableSlowSearchRule implements Rule {
-    String lastString = null; //for anonymous inners
+abstract class MutableSlowSearchRule extends IncrementalRule {
     String message = ""; //for anonymous inners
     private LexerToken.TokenIds tokenId;
 
@@ -31,55 +30,86 @@ abstract class MutableSlowSearchRule implements Rule {
      */
     void setTokenId( LexerToken.TokenIds newTokenId ){ tokenId = newTokenId; }
 
+    /** Returns true if the char is a line terminator, i.e. is not matched by "." in a regex
+     * @param c the char
+     * @return true if c is a line terminator
+     */
+    static boolean isLineTerminator(char c){
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+
     /** Returns a Rule for recognizing strings
      * @return a Rule for recognizing string literals
      */
     public static Rule getStringRule(){
+        return stringRule(new SimpleStringProperty("#055212"));
+    }
+
+    /** Returns a Rule for recognizing strings in the given color
+     * @param style the color of well-formed strings
+     * @return a Rule for recognizing string literals
+     */
+    private static IncrementalRule stringRule(final SimpleStringProperty style){
         return new MutableSlowSearchRule() {
-            final Pattern illegalEscapePatter = Pattern.compile(".*\\\\[^tbnrf\'\"\\\\].*");
-            private final SimpleStringProperty style = new SimpleStringProperty("#055212");
             private String actualStyle = " <font color=\"#055212\"> ";
 
+            private boolean opened, newline, escapedTerminator, illegalEscape;
+            private int quotes, terminators;
+            private char previous;
+            private String error; //the message of the match, null if it is a string
+
             @Override
-            public boolean matches(CharSequence s) {
-               lastString = s.toString();
-                if (!lastString.startsWith("\"")) return false;
-                if (lastString.length() == 1 || lastString.endsWith("\\\"")){
-                    setTokenId(LexerToken.TokenIds.LEX_ERROR);
-                    message = "EOF while scanning string literal";
-                    actualStyle = " <u><font color=\"#FF0000\"> ";
-                    return true;
-                }
-                if (lastString.contains("\n")){
-                    setTokenId(LexerToken.TokenIds.LEX_ERROR);
-                    message = "Unsupported multi-line string";
-                    actualStyle = " <u><font color=\"#FF0000\"> ";
-                    return true;
-                }if (illegalEscapePatter.matcher(s).matches()){
+            void restart(){
+                opened = newline = escapedTerminator = illegalEscape = false;
+                quotes = terminators = 0;
+            }
+
+            @Override
+            int step(char c) {
+                if (length == 1) opened = c == '\"';
+                if (!opened) return DEAD;
+                boolean escaped = length > 1 && previous == '\\';
+                previous = c;
+                if (c == '\"') quotes++;
+                if (c == '\n') newline = true;
+                //an escape is only seen as illegal if no line breaks surround it
+                if (isLineTerminator(c)){
+                    if (terminators++ == 0) escapedTerminator = escaped;
+                }else if (escaped && "tbnrf\'\"\\".indexOf(c) == -1)
+                    illegalEscape = true;
+
+                int result = quotes == 1 ? VIABLE : DEAD;
+                if (length == 1 || (escaped && c == '\"'))
+                    error = "EOF while scanning string literal";
+                else if (newline)
+                    error = "Unsupported multi-line string";
+                else if (terminators == 0 ? illegalEscape : terminators == 1 && escapedTerminator)
+                    error = "Illegal escape character in string";
+                else if (c == '\"' && quotes == 2)
+                    error = null;
+                else return result;
+                return result | MATCH;
+            }
+
+            @Override
+            void record(int result){
+                if ((result & MATCH) == 0) return;
+                if (error != null){
                     setTokenId(LexerToken.TokenIds.LEX_ERROR);
-                    message = "Illegal escape character in string";
+                    message = error;
                     actualStyle = " <u><font color=\"#FF0000\"> ";
-                    return true;
-                }if (lastString.endsWith("\"") && lastString.length() > 1 &&
-                        lastString.split("\"",-1).length - 1 == 2 ){
+                }else{
                     setTokenId(LexerToken.TokenIds.STRING_CONST);
                     message = "";
                     actualStyle = "<font color=\""+style.getValue()+"\"> ";
-                    return true;
                 }
-                return false;
-            }
-
-            @Override
-            public boolean hitEnd() {
-                return lastString.startsWith("\"") &&
-                        lastString.split("\"", -1).length - 1 == 1;
             }
 
             @Override public String toString(){return message;}
 
             @Override public String getStyle(){return actualStyle;}
             @Override public SimpleStringProperty getStyleProperty(){return style;}
+            @Override public IncrementalRule fork(){return stringRule(style);}
 
         };
     }
@@ -88,54 +118,74 @@ abstract class MutableSlowSearchRule implements Rule {
      * @return a Rule for recognizing character literals
      */
     public static Rule getCharacterRule(){
+        return characterRule();
+    }
+
+    /** Returns a Rule for recognizing characters; its style follows the last token
+     * @return a Rule for recognizing character literals
+     */
+    private static IncrementalRule characterRule(){
         return new MutableSlowSearchRule() {
-            final Pattern illegalEscapePatter = Pattern.compile(".*\\\\[^tbnrf\'\'\\\\].*");
             private final SimpleStringProperty style = new SimpleStringProperty("");
 
+            private boolean opened, newline, escapedTerminator, illegalEscape, escapedContent;
+            private int quotes, terminators, contentLength;
+            private char previous;
+            private String error; //the message of the match, null if it is a character
+
             @Override
-            public boolean matches(CharSequence s) {
-                lastString = s.toString();
-                if (!lastString.startsWith("\'")) return false;
-                if (lastString.length() == 1 || lastString.endsWith("\\\'")){
-                    setTokenId(LexerToken.TokenIds.LEX_ERROR);
-                    message = "EOF while scanning string literal";
-                    style.set(" <u><font color=\"#FF0000\"> ");
-                    return true;
+            void restart(){
+                opened = newline = escapedTerminator = illegalEscape = escapedContent = false;
+                quotes = terminators = contentLength = 0;
+            }
+
+            @Override
+            int step(char c) {
+                if (length == 1) opened = c == '\'';
+                if (!opened) return DEAD;
+                boolean escaped = length > 1 && previous == '\\';
+                previous = c;
+                //the content is everything between the first two quotes
+                if (c == '\'') quotes++;
+                else if (quotes == 1){
+                    contentLength++;
+                    if (c == '\\') escapedContent = true;
                 }
-                if (lastString.contains("\n")){
-                    setTokenId(LexerToken.TokenIds.LEX_ERROR);
-                    message = "Unsupported multi-line character";
-                    style.set(" <u><font color=\"#FF0000\"> ");
-                    return true;
-                }if (illegalEscapePatter.matcher(s).matches()){
+                if (c == '\n') newline = true;
+                //an escape is only seen as illegal if no line breaks surround it
+                if (isLineTerminator(c)){
+                    if (terminators++ == 0) escapedTerminator = escaped;
+                }else if (escaped && "tbnrf\'\\".indexOf(c) == -1)
+                    illegalEscape = true;
+
+                int result = quotes == 1 ? VIABLE : DEAD;
+                if (length == 1 || (escaped && c == '\''))
+                    error = "EOF while scanning string literal";
+                else if (newline)
+                    error = "Unsupported multi-line character";
+                else if (terminators == 0 ? illegalEscape : terminators == 1 && escapedTerminator)
+                    error = "Illegal escape character in string";
+                else if (quotes >= 2 && (contentLength == 0 || contentLength > 2 ||
+                        (!escapedContent && contentLength > 1)))
+                    error = "Character literal too long";
+                else if (c == '\'' && quotes == 2)
+                    error = null;
+                else return result;
+                return result | MATCH;
+            }
+
+            @Override
+            void record(int result){
+                if ((result & MATCH) == 0) return;
+                if (error != null){
                     setTokenId(LexerToken.TokenIds.LEX_ERROR);
-                    message = "Illegal escape character in string";
+                    message = error;
                     style.set(" <u><font color=\"#FF0000\"> ");
-                    return true;
-                }
-                if (lastString.indexOf('\'',1) != -1){
-                    String lastRelevantString = lastString.substring(1,lastString.indexOf('\'',1));
-                    if (lastRelevantString.length() == 0 || lastRelevantString.length() > 2 ||
-                        (!lastRelevantString.contains("\\") && lastRelevantString.length() > 1)){
-                            setTokenId(LexerToken.TokenIds.LEX_ERROR);
-                            message = "Character literal too long";
-                            style.set(" <u><font color=\"#FF0000\"> ");
-                            return true;
-                    }
-                }if (lastString.endsWith("\'") && lastString.length() > 1 &&
-                        lastString.split("\'",-1).length - 1 == 2 ){
+                }else{
                     setTokenId(LexerToken.TokenIds.CHAR_CONST);
                     message = "";
                     style.set(" <font color=\"#800000\"> ");
-                    return true;
                 }
-                return false;
-            }
-
-            @Override
-            public boolean hitEnd() {
-                return lastString.startsWith("\'") &&
-                        lastString.split("\'", -1).length - 1 == 1;
             }
 
             @Override
@@ -145,40 +195,63 @@ abstract class MutableSlowSearchRule implements Rule {
 
             @Override public String getStyle(){return style.getValue();}
             @Override public SimpleStringProperty getStyleProperty(){return style;}
+            @Override public IncrementalRule fork(){return characterRule();}
         };
     }
 
     /** Returns a Rule for integer values. Doesn't include underscores... because
      * because those are stupid (just kidding: FIXME).
+     * Recognizes (([0-9]+[lL]?)|(0x[0-9a-fA-F]+)|(0b[01]+))
      * @return returns a Rule for integer literals
      */
     public static Rule getIntegerRule(){
+        return integerRule(new SimpleStringProperty(" <font color=\"#9EA80F\"> "));
+    }
+
+    /** Returns a Rule for integer values in the given style
+     * @param style the style of integers
+     * @return returns a Rule for integer literals
+     */
+    private static IncrementalRule integerRule(final SimpleStringProperty style){
             return new MutableSlowSearchRule(){
-                Matcher matcher = null;
-                final private Pattern regex = Pattern.compile(
-                        "(([0-9]+[lL]?)|(0x[0-9a-fA-F]+)|(0b[01]+))");
+                //phases of the literal
+                private static final int START = 0, ZERO = 1, DECIMAL = 2, LONG = 3,
+                        HEX_PREFIX = 4, HEX = 5, BINARY_PREFIX = 6, BINARY = 7, NONE = 8;
+                private int phase;
                 //+- handled by parser
 
                 @Override
-                public boolean hitEnd(){
-                    boolean result = matcher.hitEnd();
-                    if (result) checkOverflow();
-                    return result;
-                }
+                void restart(){ phase = START; }
 
                 @Override
-                public boolean matches(CharSequence charSequence){
-                    lastString = charSequence.toString();
-                    matcher = regex.matcher(charSequence);
-                    boolean result = matcher.matches();
-                    if (result) checkOverflow();
-                    return result;
+                int step(char c){
+                    boolean digit = c >= '0' && c <= '9';
+                    switch (phase){
+                        case START: phase = c == '0' ? ZERO : digit ? DECIMAL : NONE; break;
+                        case ZERO: phase = digit ? DECIMAL : c == 'l' || c == 'L' ? LONG :
+                                c == 'x' ? HEX_PREFIX : c == 'b' ? BINARY_PREFIX : NONE; break;
+                        case DECIMAL: phase = digit ? DECIMAL : c == 'l' || c == 'L' ? LONG : NONE; break;
+                        case HEX_PREFIX:
+                        case HEX: phase = digit || (c >= 'a' && c <= 'f') ||
+                                (c >= 'A' && c <= 'F') ? HEX : NONE; break;
+                        case BINARY_PREFIX:
+                        case BINARY: phase = c == '0' || c == '1' ? BINARY : NONE; break;
+                        default: phase = NONE;
+                    }
+                    switch (phase){
+                        case ZERO: case DECIMAL: case HEX: case BINARY: return MATCH | VIABLE;
+                        case LONG: return MATCH;
+                        case HEX_PREFIX: case BINARY_PREFIX: return VIABLE;
+                        default: return DEAD;
+                    }
                 }
 
+                @Override
+                void record(int result){ checkOverflow(); }
+
                 /**Checks for overflow in the integer, changes token type if found **/
                 private void checkOverflow(){
                     //longs can end with "L"; parseLong inputs can't
-                    String overflow = lastString;
                     //try{
 //                        if (lastString.endsWith("L")||lastString.endsWith("l"))
 //                            overflow = lastString.substring(0,lastString.length()-1);
@@ -197,60 +270,97 @@ abstract class MutableSlowSearchRule implements Rule {
                     return message;
                 }
 
-                private final SimpleStringProperty style = new SimpleStringProperty(" <font color=\"#9EA80F\"> ");
                 @Override public String getStyle(){return style.getValue();}
                 @Override public SimpleStringProperty getStyleProperty(){return style;}
+                @Override public IncrementalRule fork(){return integerRule(style);}
             };
     }
 
     /** Returns a Rule for floating point values. Doesn't include underscores... because
      * because those are stupid (just kidding: FIXME).
+     * Recognizes ([0-9]+[\.eE][0-9]*|\.[0-9]+)[FfDd]?
      * @return returns a Rule for floating point literals
      */
     public static Rule getFloatRule(){
+        return floatRule(new SimpleStringProperty(" <font color=\"#9EA80F\"> "));
+    }
+
+    /** Returns a Rule for floating point values in the given style
+     * @param style the style of floating point values
+     * @return returns a Rule for floating point literals
+     */
+    private static IncrementalRule floatRule(final SimpleStringProperty style){
         return new MutableSlowSearchRule(){
-            Matcher matcher = null;
-            final private Pattern regex = Pattern.compile(
-                    "([0-9]+[\\.eE][0-9]*|\\.[0-9]+)[FfDd]?");
-            private final SimpleStringProperty style =
-                    new SimpleStringProperty(" <font color=\"#9EA80F\"> ");
+            //phases of the literal
+            private static final int START = 0, WHOLE = 1, FRACTION = 2, POINT = 3,
+                    SUFFIX = 4, NONE = 5;
+            private int phase;
+            //true while an exponent has no digits, which Float.parseFloat rejects
+            private boolean emptyExponent;
+            //the text of the token when it was found malformed, or null
+            private CharSequence malformedSource = null;
+            private int malformedStart, malformedLength;
 
             @Override
-            public boolean hitEnd(){
-                boolean result = matcher.hitEnd();
-                if (result) checkOverflow();
-                return result;
+            void restart(){
+                phase = START;
+                emptyExponent = false;
             }
 
             @Override
-            public boolean matches(CharSequence charSequence){
-                lastString = charSequence.toString();
-                matcher = regex.matcher(charSequence);
-                boolean result = matcher.matches();
-                if (result) checkOverflow();
-                return result;
+            int step(char c){
+                boolean digit = c >= '0' && c <= '9';
+                boolean suffix = c == 'F' || c == 'f' || c == 'D' || c == 'd';
+                switch (phase){
+                    case START: phase = digit ? WHOLE : c == '.' ? POINT : NONE; break;
+                    case WHOLE:
+                        if (c == 'e' || c == 'E') emptyExponent = true;
+                        phase = digit ? WHOLE : c == '.' || c == 'e' || c == 'E' ? FRACTION : NONE;
+                        break;
+                    case POINT: phase = digit ? FRACTION : NONE; break;
+                    case FRACTION:
+                        if (digit) emptyExponent = false;
+                        phase = digit ? FRACTION : suffix ? SUFFIX : NONE;
+                        break;
+                    default: phase = NONE;
+                }
+                switch (phase){
+                    case WHOLE: case POINT: return VIABLE;
+                    case FRACTION: return MATCH | VIABLE;
+                    case SUFFIX: return MATCH;
+                    default: return DEAD;
+                }
             }
 
+            @Override
+            void record(int result){ checkOverflow(); }
+
             /**Checks for overflow in the integer, changes token type if found **/
             private void checkOverflow(){
-                try{
-                    Float.parseFloat(lastString);
+                //Float.parseFloat only fails on an empty exponent or a lone point
+                if (!emptyExponent && phase != POINT){
                     setTokenId(LexerToken.TokenIds.FLOAT_CONST);
                     message = "";
-                }catch (NumberFormatException nfs){
+                    malformedSource = null;
+                }else{
+                    //the message is only built if it is asked for
                     setTokenId(LexerToken.TokenIds.LEX_ERROR);
-                    message = "Float " + lastString + " too large";
+                    malformedSource = source;
+                    malformedStart = start;
+                    malformedLength = length;
                 }
 
             }
 
             @Override
             public String toString(){
-                return message;
+                return malformedSource == null ? message : "Float " + malformedSource.subSequence(
+                        malformedStart, malformedStart + malformedLength) + " too large";
             }
 
             @Override public String getStyle(){return style.getValue();}
             @Override public SimpleStringProperty getStyleProperty(){return style;}
+            @Override public IncrementalRule fork(){return floatRule(style);}
         };
     }
 }
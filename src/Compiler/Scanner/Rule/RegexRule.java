@@ -16,7 +16,8 @@ import java.util.regex.Pattern;
 class RegexRule implements Rule {
     private final Pattern regex;
     public final LexerToken.TokenIds tokenId;
-    private Matcher matcher;
+    //the last match of each thread, for hitEnd
+    private final ThreadLocal<Matcher> matcher = new ThreadLocal<>();
     private final String message;
     private final SimpleStringProperty style;
 
@@ -28,7 +29,6 @@ class RegexRule implements Rule {
     public RegexRule(String rule, LexerToken.TokenIds id){
         regex = Pattern.compile(rule);
         tokenId = id;
-        matcher = null;
         message = "";
         style = new SimpleStringProperty("");
     }
@@ -42,7 +42,6 @@ class RegexRule implements Rule {
     public RegexRule(String rule, LexerToken.TokenIds id, String tokenMessage){
         regex = Pattern.compile(rule);
         tokenId = id;
-        matcher = null;
         message = tokenMessage;
         style = new SimpleStringProperty("");
     }
@@ -58,7 +57,6 @@ class RegexRule implements Rule {
                      String tokenStyle){
         regex = Pattern.compile(rule);
         tokenId = id;
-        matcher = null;
         message = tokenMessage;
         style = new SimpleStringProperty(tokenStyle);
     }
@@ -70,21 +68,29 @@ class RegexRule implements Rule {
      * @return true if the string is contained by the language of the regex
      */
     public boolean matches(CharSequence s){
-        matcher = regex.matcher(s);
-        return matcher.matches();
+        Matcher match = regex.matcher(s);
+        matcher.set(match);
+        return match.matches();
     }
 
-    /** Returns hitEnd called on the regex Pattern.
+    /** Returns hitEnd called on the regex Pattern, for the last string given to
+     * matches on the current thread.
      *
      * @return hitEnd called on the regex Pattern
      */
     public  boolean hitEnd(){
-        if (matcher == null){
+        Matcher match = matcher.get();
+        if (match == null){
             throw new RuntimeException("Regex matcher not instantiated when calling hitEnd");
         }
-        return matcher.hitEnd();
+        return match.hitEnd();
     }
 
+    /** Returns the source of the regex, for compiling the rule into an automaton
+     * @return the regex source
+     */
+    String getRegex(){ return regex.pattern(); }
+
     /** Returns the message of the rule or empty string if no message
      * is defined.
      * @return the message in string form
@@ -1,5 +1,7 @@
 package Compiler.Scanner.Rule;
 
+import Compiler.Scanner.Automaton.DFA;
+import Compiler.Scanner.Automaton.RegexCompiler;
 import Compiler.Scanner.LexerToken;
 import Compiler.Scanner.Rule.MutableSlowSearchRule;
 import Compiler.Scanner.Rule.RegexRule;
@@ -7,6 +9,7 @@ import Compiler.Scanner.Rule.Rule;
 import Compiler.Scanner.Rule.SlowSearchRule;
 import javafx.beans.property.SimpleStringProperty;
 
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.regex.Pattern;
 
@@ -173,6 +176,102 @@ public final class RuleAssembler {
             //most prioritized down here
     };
 
+    //every RegexRule above, folded into one automaton; the remaining rules are run beside it,
+    //and the keywords are looked up once a token is scanned
+    private static final ArrayList<Integer> uncompiledRules = new ArrayList<>();
+    private static final ArrayList<String> keywords = new ArrayList<>();
+    private static final ArrayList<Integer> keywordRules = new ArrayList<>();
+    private static final DFA automaton = compileAutomaton();
+    private static final KeywordTable keywordTable = compileKeywords();
+
+    /** Returns the DFA compiled from every RegexRule in the table except the keywords.
+     * Each regex accepts on behalf of its index in assembledRules, so the table's
+     * priorities carry over as-is.
+     * @return the compiled automaton
+     */
+    public static DFA getAutomaton(){return automaton;}
+
+    /** Returns the table of the keyword rules, which were left out of the automaton.
+     * A keyword only matches words the identifier rule matches as well, so the
+     * automaton scans a keyword as an identifier of the same length; the rule of a
+     * token is the higher-priority of the rule found by the automaton and the rule of
+     * the keyword the token spells, if any.
+     * @return the keywords, mapped to the indices of their rules
+     */
+    public static KeywordTable getKeywords(){return keywordTable;}
+
+    /** Returns the indices of the rules that are not regex-based, and so were not
+     * compiled into the automaton, in increasing order.
+     * @return the indices of the uncompiled rules
+     */
+    public static int[] getUncompiledRules(){
+        int[] indices = new int[uncompiledRules.size()];
+        for (int i = 0; i < indices.length; i++) indices[i] = uncompiledRules.get(i);
+        return indices;
+    }
+
+    /** Returns the rules that were not compiled into the automaton, in the order
+     * of getUncompiledRules.
+     * @return the uncompiled rules
+     */
+    public static IncrementalRule[] getIncrementalRules(){
+        IncrementalRule[] rules = new IncrementalRule[uncompiledRules.size()];
+        for (int i = 0; i < rules.length; i++)
+            rules[i] = (IncrementalRule) assembledRules[uncompiledRules.get(i)];
+        return rules;
+    }
+
+    /** Compiles the regex-based rules of the table into a single automaton
+     * @return the automaton
+     */
+    private static DFA compileAutomaton(){
+        Pattern identifier = null;
+        for (Rule rule : assembledRules)
+            if (rule instanceof RegexRule && rule.getTokenId() == LexerToken.TokenIds.ID)
+                identifier = Pattern.compile(((RegexRule) rule).getRegex());
+
+        RegexCompiler compiler = new RegexCompiler();
+        for (int i = 0; i < assembledRules.length; i++){
+            if (assembledRules[i] instanceof RegexRule &&
+                    isKeyword(((RegexRule) assembledRules[i]).getRegex(), identifier)){
+                for (String word : ((RegexRule) assembledRules[i]).getRegex().split("\\|")){
+                    keywords.add(word);
+                    keywordRules.add(i);
+                }
+            }else if (assembledRules[i] instanceof RegexRule)
+                compiler.add(((RegexRule) assembledRules[i]).getRegex(), i);
+            else if (assembledRules[i] instanceof IncrementalRule)
+                uncompiledRules.add(i);
+            else throw new RuntimeException("Lexer-Rule " + i + " can not be scanned");
+        }
+        return compiler.compile();
+    }
+
+    /** Returns true if the regex is a list of literal words, every prefix of which is
+     * an identifier; the automaton then needs no states of its own for the regex.
+     * @param regex the rule regex
+     * @param identifier the regex of identifiers, or null if there is none
+     * @return true if the rule can be looked up as a keyword
+     */
+    private static boolean isKeyword(String regex, Pattern identifier){
+        if (identifier == null) return false;
+        for (String word : regex.split("\\|", -1)){
+            if (!word.matches("[_$a-zA-Z0-9]+")) return false;
+            for (int i = 1; i <= word.length(); i++)
+                if (!identifier.matcher(word.substring(0, i)).matches()) return false;
+        }
+        return true;
+    }
+
+    /** Builds the lookup table of the keywords found while compiling the automaton
+     * @return the table of keywords
+     */
+    private static KeywordTable compileKeywords(){
+        int[] rules = new int[keywordRules.size()];
+        for (int i = 0; i < rules.length; i++) rules[i] = keywordRules.get(i);
+        return new KeywordTable(keywords.toArray(new String[keywords.size()]), rules);
+    }
+
     /** Returns a new RegexRule from the given regex and ID if that ID is not already
      * in use, otherwise throws an exception.
      * @param regex the rule regex
@@ -10,14 +10,18 @@ import javafx.beans.property.SimpleStringProperty;
  * regular expressions are difficult to construct. Extending classes have
  * immutable token ids. The RegexRule class is preferable. The class
  * includes factory methods for common child classes.
+ * <br>The comment rules track the comment delimiters one char at a time, so a
+ * long comment is never re-examined from its start.
  */
-abstract class SlowSearchRule implements Rule {
+abstract class SlowSearchRule extends IncrementalRule {
 
-    String lastString = null; //for anonymous inners
     public final LexerToken.TokenIds tokenId;
     private static Rule blockCommentRule = null;
     private static Rule uBlockCommentRule = null;
 
+    boolean opened, javadoc, closed, closing; //for anonymous inners
+    private char previous;
+
     /** Creates a new SlowSearchRule; not generally accessible
      * @param id the TokenId for the rule
      */
@@ -31,23 +35,42 @@ abstract class SlowSearchRule implements Rule {
     @Override
     public LexerToken.TokenIds getTokenId(){ return tokenId; }
 
+    @Override
+    void restart(){
+        opened = javadoc = closed = closing = false;
+    }
+
+    /** Tracks the comment delimiters of the token
+     * @param c the next char
+     * @return VIABLE if the token is still an open comment, otherwise DEAD
+     */
+    @Override
+    int step(char c){
+        if (length == 2) opened = previous == '/' && c == '*';
+        else if (length == 3) javadoc = opened && c == '*';
+        closing = length > 1 && previous == '*' && c == '/';
+        if (closing) closed = true;
+        previous = c;
+        boolean startsRight = length <= 1 ? c == '/' : opened;
+        return startsRight && !closed ? VIABLE : DEAD;
+    }
+
     public static Rule getBlockCommentRule(){
         if (blockCommentRule == null)
-            blockCommentRule = new SlowSearchRule(LexerToken.TokenIds.COMMENT){
-            @Override
-            public boolean hitEnd(){
-                if (lastString == null)
-                    throw new RuntimeException("Match not initialized");
-                //still uses regexes, more indirectly
-                boolean startsRight = lastString.length() <= 1 ?
-                        lastString.startsWith("/") : lastString.startsWith("/*");
-                return startsRight && lastString.split("\\*/",-1).length-1 == 0;
-            }
+            blockCommentRule = blockCommentRule();
+        return blockCommentRule;
+    }
 
+    /** Returns a new Rule for recognizing block comments
+     * @return a Rule for block comments
+     */
+    private static IncrementalRule blockCommentRule(){
+        return new SlowSearchRule(LexerToken.TokenIds.COMMENT){
             @Override
-            public boolean matches(CharSequence charSequence){
-                lastString = charSequence.toString();
-                return lastString.startsWith("/*") && lastString.endsWith("*/");
+            int step(char c){
+                int result = super.step(c);
+                //matches whenever the token ends with */
+                return opened && closing ? result | MATCH : result;
             }
 
             @Override
@@ -58,58 +81,58 @@ abstract class SlowSearchRule implements Rule {
             private final SimpleStringProperty style = new SimpleStringProperty("");
 
             @Override public String getStyle(){
-                if (lastString.startsWith("/**"))
+                if (javadoc)
                     style.set(" <font color=\"#00FFCC \"> ");
                 else style.set("<font color=\"#808080 \">");
                 return style.getValue();
             }
 
             @Override public SimpleStringProperty getStyleProperty(){
-                if (lastString.startsWith("/**"))
+                if (javadoc)
                     style.set(" <font color=\"#00FFCC \"> ");
                 else style.set("<font color=\"#808080 \">");
                 return style;
             }
+
+            @Override public IncrementalRule fork(){return blockCommentRule();}
         };
-        return blockCommentRule;
     }
 
     public static Rule getUnterminatedBlockCommentRule(){
         if (uBlockCommentRule == null)
-            uBlockCommentRule = new SlowSearchRule(LexerToken.TokenIds.LEX_ERROR){
-                @Override
-                public boolean hitEnd(){
-                    if (lastString == null)
-                        throw new RuntimeException("Match not initialized");
-                    //still uses regexes, more indirectly
-                    boolean startsRight = lastString.length() <= 1 ?
-                            lastString.startsWith("/") : lastString.startsWith("/*");
-                    return startsRight && lastString.split("\\*/",-1).length-1 == 0;
-                }
-
-                @Override
-                public boolean matches(CharSequence charSequence){
-                    lastString = charSequence.toString();
-                    return lastString.startsWith("/*") && !lastString.contains("*/");
-                }
-
-                @Override
-                public String toString(){
-                    return "Unterminated block comment";
-                }
-
-                private final SimpleStringProperty style =
-                        new SimpleStringProperty(" <u><font color=\"#FF0000\"> ");
-                @Override public String getStyle(){
-                    return style.getValue();
-                }
-                @Override public SimpleStringProperty getStyleProperty(){
-                    return style;
-                }
-            };
+            uBlockCommentRule = unterminatedBlockCommentRule();
         return uBlockCommentRule;
     }
 
+    /** Returns a new Rule for recognizing block comments that are never closed
+     * @return a Rule for unterminated block comments
+     */
+    private static IncrementalRule unterminatedBlockCommentRule(){
+        return new SlowSearchRule(LexerToken.TokenIds.LEX_ERROR){
+            @Override
+            int step(char c){
+                int result = super.step(c);
+                //matches as long as the comment is open
+                return opened && !closed ? result | MATCH : result;
+            }
+
+            @Override
+            public String toString(){
+                return "Unterminated block comment";
+            }
+
+            private final SimpleStringProperty style =
+                    new SimpleStringProperty(" <u><font color=\"#FF0000\"> ");
+            @Override public String getStyle(){
+                return style.getValue();
+            }
+            @Override public SimpleStringProperty getStyleProperty(){
+                return style;
+            }
+            @Override public IncrementalRule fork(){return unterminatedBlockCommentRule();}
+        };
+    }
+
 
 
 }
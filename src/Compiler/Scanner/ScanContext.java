@@ -0,0 +1,41 @@
+package Compiler.Scanner;
+
+import Compiler.Scanner.Rule.IncrementalRule;
+import Compiler.Scanner.Rule.Rule;
+import Compiler.Scanner.Rule.RuleAssembler;
+
+/**
+ * This class is designed to hold the mutable state of the rules while a Scanner scans a
+ * token. The rule table is shared by every Scanner, but the rules that are not compiled
+ * into the automaton keep the id, message and style of the token they last followed, so
+ * each context has its own forks of them, along with the flags marking which of them
+ * are still alive.
+ * <br>A context may be reused by any number of Scanners, one token at a time; Scanners
+ * that scan at the same time on different threads must use different contexts. Each
+ * thread keeps one context to hand out (see forCurrentThread).
+ */
+final class ScanContext {
+
+    private static final ThreadLocal<ScanContext> perThread = ThreadLocal.withInitial(ScanContext::new);
+
+    //the rule table, with the uncompiled rules replaced by this context's forks
+    final Rule[] rules = RuleAssembler.assembledRules.clone();
+    //the indices of the uncompiled rules, their forks, and whether each is still alive
+    final int[] uncompiledRules = RuleAssembler.getUncompiledRules();
+    final IncrementalRule[] incrementalRules = new IncrementalRule[uncompiledRules.length];
+    final boolean[] livingRules = new boolean[uncompiledRules.length];
+
+    /** Creates a context with fresh forks of the uncompiled rules **/
+    ScanContext(){
+        for (int i = 0; i < uncompiledRules.length; i++)
+            rules[uncompiledRules[i]] = incrementalRules[i] =
+                    ((IncrementalRule) rules[uncompiledRules[i]]).fork();
+    }
+
+    /** Returns the context kept for the current thread; it must not be handed to a
+     * Scanner that is used on another thread.
+     * @return the context of the current thread
+     */
+    static ScanContext forCurrentThread(){return perThread.get();}
+
+}
@@ -1,35 +1,59 @@
 package Compiler.Scanner;
 
 
+import Compiler.Scanner.Automaton.DFA;
 import Compiler.Scanner.Rule.*;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
 /**
  * Author: Matt
  * Date: 2/20/14
  * This class is designed to do the scanning of a file as part of standard  A Scanner is
  * immutable - the input text cannot be modified.
  * procedure.
+ * <br>The rule table and the automaton are shared and never modified while scanning;
+ * the state of the rules for the token being scanned lives in the ScanContext of the
+ * scanner, so scanners on different threads do not interfere.
  */
 public class Scanner {
 
-    //in reverse order of priority, table of rules
-    private static final Rule[] regexes = RuleAssembler.assembledRules;
+    //the regex rules of the table, compiled into one automaton
+    private static final DFA automaton = RuleAssembler.getAutomaton();
+    //the keyword rules, looked up once a token is scanned
+    private static final KeywordTable keywords = RuleAssembler.getKeywords();
+
+    //the state of the rules while scanning a token
+    private final ScanContext context;
 
-    private final String input_string;
+    private final CharSequence input_string;
     private int position;
-    private final Rule[] possiblePatterns = new Rule[regexes.length];
-    final private StringBuilder curToken;
     final private boolean includeWhiteSpace;
 
     private int curLineNum;
     private int curColNum;
+    //the offset of the first char of the last scanned token
+    private int tokenStart;
+    //where the lines scanned so far start, if the scanner keeps track of them
+    private final LineIndex lineIndex;
 
-    /** Creates the scanner out of an input text
+    private static final String UNRECOGNIZED_MESSAGE = "Unrecognized character";
+    private static final String UNRECOGNIZED_STYLE = " <u><font color=\"#FF0000\"> ";
+
+    /** Creates the scanner out of an input text. The text may be any CharSequence, e.g.
+     * one backed by a mapped file (see IOManager.mapFile); it must not change while the
+     * scanner uses it.
      * @param text the input for the scanner
      */
-    public Scanner( String text ){
+    public Scanner( CharSequence text ){
         input_string = text;
-        curToken = new StringBuilder();
+        context = new ScanContext();
+        lineIndex = new LineIndex();
         includeWhiteSpace = false;
         curColNum = position = 0;
         curLineNum = 1;
@@ -39,14 +63,102 @@ public class Scanner {
      * @param text the input for the scanner
      * @param giveWhitespace if true, return whitespace "NULL" tokens
      */
-    public Scanner( String text, boolean giveWhitespace ){
+    public Scanner( CharSequence text, boolean giveWhitespace ){
+        this(text, giveWhitespace, new ScanContext());
+    }
+
+    /** Creates the scanner out of an input text, using the given context for the state
+     * of its rules
+     * @param text the input for the scanner
+     * @param giveWhitespace if true, return whitespace "NULL" tokens
+     * @param context the context of the scanner
+     */
+    Scanner( CharSequence text, boolean giveWhitespace, ScanContext context ){
         input_string = text;
+        this.context = context;
+        lineIndex = new LineIndex();
         curColNum = position = 0;
         curLineNum = 1;
-        curToken = new StringBuilder();
         includeWhiteSpace = giveWhitespace;
     }
 
+    /** Creates a scanner that resumes scanning the text at a token boundary, as if
+     * it had scanned everything before it. Whitespace tokens are returned, and the
+     * lines are not kept track of.
+     * @param text the input for the scanner
+     * @param position the offset of the boundary
+     * @param lineNum the line number of the token ending at the boundary (1 if none)
+     * @param colNum the column number of the token ending at the boundary (0 if none)
+     * @param context the context of the scanner
+     */
+    Scanner( CharSequence text, int position, int lineNum, int colNum, ScanContext context ){
+        input_string = text;
+        this.context = context;
+        lineIndex = null;
+        this.position = position;
+        curLineNum = lineNum;
+        curColNum = colNum;
+        includeWhiteSpace = true;
+    }
+
+    /** Returns the index of the lines the scanner has passed so far; it covers the
+     * whole text once the scanner has returned EOF.
+     * @return the index of the lines of the text
+     */
+    public LineIndex getLineIndex(){return lineIndex;}
+
+    /** Returns the offset in the text at which the next token begins
+     * @return the offset of the next token
+     */
+    int getPosition(){return position;}
+
+    /** Scans the text into a buffer, splitting it into chunks that are scanned in
+     * parallel on the common ForkJoinPool. The tokens are the same the scanner returns.
+     * @param text the input for the scanner
+     * @param giveWhitespace if true, include whitespace and comment tokens
+     * @return the tokens of the text
+     */
+    public static TokenBuffer scanParallel( CharSequence text, boolean giveWhitespace ){
+        return scanParallel(text, giveWhitespace, ForkJoinPool.commonPool());
+    }
+
+    /** Scans the text into a buffer, splitting it into chunks that are scanned in
+     * parallel on the given pool. The tokens are the same the scanner returns.
+     * @param text the input for the scanner
+     * @param giveWhitespace if true, include whitespace and comment tokens
+     * @param pool the pool on which to scan the chunks
+     * @return the tokens of the text
+     */
+    public static TokenBuffer scanParallel( CharSequence text, boolean giveWhitespace,
+                                            ForkJoinPool pool ){
+        return ParallelScan.scan(text, giveWhitespace, pool, ParallelScan.CHUNK_SIZE);
+    }
+
+    /** Scans each of the texts into a buffer, the texts being scanned concurrently on
+     * the given pool.
+     * @param texts the inputs for the scanner
+     * @param giveWhitespace if true, include whitespace and comment tokens
+     * @param pool the pool on which to scan the texts
+     * @return the tokens of each text, in the order of the texts
+     */
+    public static List<TokenBuffer> scanAll( List<? extends CharSequence> texts,
+                                             boolean giveWhitespace, ExecutorService pool ){
+        List<Future<TokenBuffer>> scans = new ArrayList<>(texts.size());
+        for (CharSequence text : texts)
+            scans.add(pool.submit(() -> new TokenBuffer(text, giveWhitespace)));
+        List<TokenBuffer> tokens = new ArrayList<>(texts.size());
+        try{
+            for (Future<TokenBuffer> scan : scans) tokens.add(scan.get());
+        }catch (InterruptedException e){
+            for (Future<TokenBuffer> scan : scans) scan.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while scanning", e);
+        }catch (ExecutionException e){
+            throw new RuntimeException("Failed to scan", e.getCause());
+        }
+        return tokens;
+    }
+
 
     /**
      * Returns the next token in the sequence or EOF token if there
@@ -54,87 +166,120 @@ public class Scanner {
      * @return The next token in the sequence or EOF token if there are none remaining
      */
     public LexerToken getNextToken(){
-        int numPossiblePatterns = 0;
-        int resultIndex = -1;
-        boolean matches;
-
-        do {
-            //end of file
-            if (position >= input_string.length()){
-                if (curToken.length() == 0)
-                    return new LexerToken(LexerToken.TokenIds.EOF,curToken.toString(),
-                            "",-1,-1);
-                else{
-                    return grabToken(resultIndex);
-                }
-            }
+        while (position < input_string.length()){
+            int resultIndex = scanToken();
+            if (resultIndex == -1)
+                return new LexerToken(LexerToken.TokenIds.LEX_ERROR,
+                        input_string.subSequence(tokenStart, position).toString(),UNRECOGNIZED_MESSAGE,
+                        curLineNum,curColNum,UNRECOGNIZED_STYLE);
+            Rule rule = context.rules[resultIndex];
+            LexerToken.TokenIds id = rule.getTokenId();
+            if (includeWhiteSpace || !isSkipped(id))
+                return new LexerToken(id,input_string.subSequence(tokenStart, position).toString(),
+                        rule.toString(),curLineNum,curColNum,rule.getStyle());
+        }
+        //end of file
+        return new LexerToken(LexerToken.TokenIds.EOF,"","",-1,-1);
+    }
 
-            //get next character
-            lookAhead1();
-
-            //loop through possible regexes
-            int i = 0;
-            int tempNumPossiblePatterns = 0;
-            for ( Rule rule : numPossiblePatterns == 0 ? regexes : possiblePatterns ){
-                //if we find a matching token or don't
-                if (rule == null) possiblePatterns[i] = null;
-                else{
-                    matches = rule.matches(curToken);
-                    //if it matches, or it might match, count it
-                    if ( matches  || rule.hitEnd() ){
-                        possiblePatterns[i] = rule;
-                        tempNumPossiblePatterns++;
-                        //we only return it if it actually matches completely
-                        if (matches)
-                            resultIndex = i;
-                    }else
-                        possiblePatterns[i] = null;
-                }
-
-                i++;
+    /** Scans the next token into the buffer, without creating a LexerToken for it
+     * @param buffer the buffer to which to append the token
+     * @return false if there are no tokens remaining
+     */
+    boolean scanNext( TokenBuffer buffer ){
+        while (position < input_string.length()){
+            int resultIndex = scanToken();
+            if (resultIndex == -1){
+                buffer.add(LexerToken.TokenIds.LEX_ERROR,tokenStart,position,curLineNum,
+                        curColNum,UNRECOGNIZED_MESSAGE,UNRECOGNIZED_STYLE);
+                return true;
             }
-            numPossiblePatterns = tempNumPossiblePatterns;
-
-            if (numPossiblePatterns == 0){
-                curToken.delete(curToken.length() - 1, curToken.length());
-                position--;
-                return grabToken(resultIndex);
+            Rule rule = context.rules[resultIndex];
+            LexerToken.TokenIds id = rule.getTokenId();
+            if (includeWhiteSpace || !isSkipped(id)){
+                buffer.add(id,tokenStart,position,curLineNum,curColNum,
+                        rule.toString(),rule.getStyle());
+                return true;
             }
-        }while (numPossiblePatterns > 0);
-
-        return grabToken(resultIndex);
+        }
+        return false;
     }
 
-    /** Adds one more character to the current token stream **/
-    private void lookAhead1(){
-        curToken.append( input_string.charAt(position) );
-        position++;
-
+    /** Returns true if tokens of the given id are only returned when asked for whitespace
+     * @param id the token id
+     * @return true if the id is whitespace or a comment
+     */
+    static boolean isSkipped( LexerToken.TokenIds id ){
+        return id == LexerToken.TokenIds.NULL || id == LexerToken.TokenIds.COMMENT;
     }
 
-    /** Returns the token associated with a rule at a given index
-     * @param resultIndex the index of the token rule
-     * @return the new token
+    /** Scans a single token in one pass over its characters. The automaton and the
+     * uncompiled rules are stepped together; the token ends as soon as none of them can
+     * match or still be in progress, and takes the id of the highest-priority rule that
+     * matched last, or of its keyword if that has a higher priority. The token spans
+     * from tokenStart to the new position.
+     * @return the index of the rule of the token, or -1 if no rule accepts its first char
      */
-    private LexerToken grabToken( int resultIndex ){
-        String tokenString = curToken.toString();
-        curToken.delete(0,curToken.length());
-        possiblePatterns[resultIndex] = null;
-        LexerToken.TokenIds id = regexes[resultIndex].getTokenId();
-        String style = regexes[resultIndex].getStyle();
-
-        //figure out where we are (this is quite slow - only keep bc tokens are short)
-        int numNewlines = (tokenString.length() - tokenString.replace("\n", "").length());
-        if (numNewlines != 0){
-            curLineNum += numNewlines;
-            curColNum = tokenString.length() - tokenString.lastIndexOf("\n");
-        }else{
-            curColNum += tokenString.length();
+    private int scanToken(){
+        int start = tokenStart = position;
+        int state = automaton.getStartState();
+        int resultIndex = -1;
+        int[] uncompiledRules = context.uncompiledRules;
+        IncrementalRule[] incrementalRules = context.incrementalRules;
+        boolean[] livingRules = context.livingRules;
+        for (int i = 0; i < livingRules.length; i++){
+            livingRules[i] = true;
+            incrementalRules[i].reset(input_string, start);
+        }
+
+        while (position < input_string.length()){
+            char c = input_string.charAt(position);
+
+            boolean viable = false;
+            int matchIndex = -1;
+            if (state != DFA.DEAD){
+                state = automaton.step(state, c);
+                viable = state != DFA.DEAD;
+                matchIndex = automaton.getAcceptingRule(state);
+            }
+            for (int i = 0; i < uncompiledRules.length; i++){
+                if (!livingRules[i]) continue;
+                //if it matches, or it might match, keep it
+                int result = incrementalRules[i].advance(c);
+                if (result != IncrementalRule.DEAD){
+                    viable = true;
+                    if ((result & IncrementalRule.MATCH) != 0)
+                        matchIndex = Math.max(matchIndex, uncompiledRules[i]);
+                }else
+                    livingRules[i] = false;
+            }
+
+            if (!viable) break;
+            position++;
+            //we only return it if it actually matches completely
+            if (matchIndex != -1) resultIndex = matchIndex;
         }
 
-        return (id != LexerToken.TokenIds.NULL && id != LexerToken.TokenIds.COMMENT) ||
-            includeWhiteSpace ? new LexerToken(id,tokenString,
-                        regexes[resultIndex].toString(),curLineNum,curColNum,style) : getNextToken();
+        //a character no rule accepts (e.g. a lone unicode line separator)
+        if (position == start){
+            position++;
+            resultIndex = -1;
+        }else if (resultIndex != -1)
+            resultIndex = Math.max(resultIndex, keywords.lookup(input_string, start, position));
+
+        //figure out where we are
+        int lastNewline = -1;
+        for (int i = start; i < position; i++)
+            if (input_string.charAt(i) == '\n'){
+                curLineNum++;
+                lastNewline = i;
+                if (lineIndex != null) lineIndex.add(i + 1);
+            }
+        if (lastNewline != -1)
+            curColNum = position - lastNewline;
+        else
+            curColNum += position - start;
+        return resultIndex;
     }
 
     /**Tests the scanenr **/
@@ -0,0 +1,309 @@
+package Compiler.Scanner;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class is designed to store the tokens of a text compactly, as an alternative to a
+ * list of LexerTokens. The id, offsets and position of each token are kept in parallel
+ * int arrays over the scanned text, and the message and style are kept as references to
+ * the strings of the rule that produced the token, so scanning into a buffer allocates
+ * nothing per token.
+ * <br>The text of a token is only cut out of the source when it is asked for, and a
+ * LexerToken is only created for a token when a consumer that needs one asks for it
+ * (see get and asList); it is then kept until the token changes.
+ */
+public final class TokenBuffer {
+
+    private static final LexerToken.TokenIds[] ids = LexerToken.TokenIds.values();
+
+    private CharSequence source;
+    private int size = 0;
+    private int[] kinds, starts, ends, lines, cols;
+    private String[] messages, styles;
+    private LexerToken[] materialized;
+    private LineIndex lineIndex = null;
+
+    /** Scans the given text into a new buffer
+     * @param text the text to scan
+     * @param giveWhitespace if true, include whitespace and comment tokens
+     */
+    public TokenBuffer( CharSequence text, boolean giveWhitespace ){
+        this(text, 16);
+        Scanner scanner = new Scanner(text, giveWhitespace, ScanContext.forCurrentThread());
+        while (scanner.scanNext(this));
+        lineIndex = scanner.getLineIndex();
+    }
+
+    /** Creates an empty buffer over the given text
+     * @param text the text the tokens refer to
+     * @param capacity the initial number of tokens that fit in the buffer
+     */
+    TokenBuffer( CharSequence text, int capacity ){
+        source = text;
+        capacity = Math.max(capacity, 1);
+        kinds = new int[capacity];
+        starts = new int[capacity];
+        ends = new int[capacity];
+        lines = new int[capacity];
+        cols = new int[capacity];
+        messages = new String[capacity];
+        styles = new String[capacity];
+        materialized = new LexerToken[capacity];
+    }
+
+    /** Returns the text the tokens were scanned from
+     * @return the text of the tokens
+     */
+    public CharSequence getSource(){return source;}
+
+    /** Returns the index of the lines of the source
+     * @return the index of the lines of the source, or null if it is not known
+     */
+    public LineIndex getLineIndex(){return lineIndex;}
+
+    /** Returns the number of tokens in the buffer
+     * @return the number of tokens
+     */
+    public int size(){return size;}
+
+    /** Returns the id of the token at the given index
+     * @param index the index of the token
+     * @return the id of the token
+     */
+    public LexerToken.TokenIds getIds( int index ){return ids[kinds[check(index)]];}
+
+    /** Returns the offset in the source of the first char of the token at the given index
+     * @param index the index of the token
+     * @return the start offset of the token
+     */
+    public int getStart( int index ){return starts[check(index)];}
+
+    /** Returns the offset in the source just past the token at the given index
+     * @param index the index of the token
+     * @return the end offset of the token
+     */
+    public int getEnd( int index ){return ends[check(index)];}
+
+    /** Returns the line number of the token at the given index
+     * @param index the index of the token
+     * @return the line number of the token
+     */
+    public int getLineNum( int index ){return lines[check(index)];}
+
+    /** Returns the column number of the token at the given index
+     * @param index the index of the token
+     * @return the column number of the token
+     */
+    public int getColNum( int index ){return cols[check(index)];}
+
+    /** Returns the message of the token at the given index
+     * @param index the index of the token
+     * @return the message of the token
+     */
+    public String getMessage( int index ){return messages[check(index)];}
+
+    /** Returns the style of the token at the given index
+     * @param index the index of the token
+     * @return the style of the token
+     */
+    public String getStyle( int index ){return styles[check(index)];}
+
+    /** Returns the text of the token at the given index, cutting it out of the source
+     * @param index the index of the token
+     * @return the text of the token
+     */
+    public String getValue( int index ){
+        check(index);
+        return source.subSequence(starts[index], ends[index]).toString();
+    }
+
+    /** Returns the token at the given index as a LexerToken. The LexerToken is created
+     * the first time it is asked for and reused afterwards.
+     * @param index the index of the token
+     * @return the token
+     */
+    public LexerToken get( int index ){
+        check(index);
+        if (materialized[index] == null)
+            materialized[index] = new LexerToken(ids[kinds[index]], getValue(index),
+                    messages[index], lines[index], cols[index], styles[index]);
+        return materialized[index];
+    }
+
+    /** Returns a read-only list view of the buffer, for consumers of LexerTokens
+     * @return the buffer as a list
+     */
+    public List<LexerToken> asList(){
+        return new AbstractList<LexerToken>() {
+            @Override public LexerToken get(int index){return TokenBuffer.this.get(index);}
+            @Override public int size(){return size;}
+        };
+    }
+
+    /** Returns the tokens of the buffer as an array of LexerTokens
+     * @return the tokens
+     */
+    public LexerToken[] toArray(){
+        LexerToken[] tokens = new LexerToken[size];
+        for (int i = 0; i < size; i++) tokens[i] = get(i);
+        return tokens;
+    }
+
+    /** Appends a token to the buffer
+     * @param id the id of the token
+     * @param start the offset of the first char of the token
+     * @param end the offset just past the token
+     * @param lineNum the line number of the token
+     * @param colNum the column number of the token
+     * @param message the message of the token
+     * @param style the style of the token
+     */
+    void add( LexerToken.TokenIds id, int start, int end, int lineNum, int colNum,
+              String message, String style ){
+        if (size == kinds.length) grow(size + 1);
+        kinds[size] = id.ordinal();
+        starts[size] = start;
+        ends[size] = end;
+        lines[size] = lineNum;
+        cols[size] = colNum;
+        messages[size] = message;
+        styles[size] = style;
+        materialized[size] = null;
+        size++;
+    }
+
+    /** Appends the tokens of the given buffer from the given index on; the buffer must
+     * refer to the same source.
+     * @param tokens the buffer to copy from
+     * @param from the index of the first token copied
+     * @param giveWhitespace if false, leave out whitespace and comment tokens
+     */
+    void append( TokenBuffer tokens, int from, boolean giveWhitespace ){
+        if (size + tokens.size - from > kinds.length) grow(size + tokens.size - from);
+        for (int i = from; i < tokens.size; i++){
+            if (!giveWhitespace && Scanner.isSkipped(ids[tokens.kinds[i]])) continue;
+            kinds[size] = tokens.kinds[i];
+            starts[size] = tokens.starts[i];
+            ends[size] = tokens.ends[i];
+            lines[size] = tokens.lines[i];
+            cols[size] = tokens.cols[i];
+            messages[size] = tokens.messages[i];
+            styles[size] = tokens.styles[i];
+            materialized[size] = tokens.materialized[i];
+            size++;
+        }
+    }
+
+    /** Removes every token from the buffer **/
+    void clear(){
+        Arrays.fill(messages, 0, size, null);
+        Arrays.fill(styles, 0, size, null);
+        Arrays.fill(materialized, 0, size, null);
+        size = 0;
+    }
+
+    /** Replaces the tokens in the range [from, to) with the tokens of the given buffer,
+     * which must refer to the same source.
+     * @param from the index of the first token replaced
+     * @param to the index past the last token replaced
+     * @param tokens the new tokens
+     */
+    void replace( int from, int to, TokenBuffer tokens ){
+        int added = tokens.size, newSize = size - (to - from) + added;
+        if (newSize > kinds.length) grow(newSize);
+        int tail = size - to;
+        System.arraycopy(kinds, to, kinds, from + added, tail);
+        System.arraycopy(starts, to, starts, from + added, tail);
+        System.arraycopy(ends, to, ends, from + added, tail);
+        System.arraycopy(lines, to, lines, from + added, tail);
+        System.arraycopy(cols, to, cols, from + added, tail);
+        System.arraycopy(messages, to, messages, from + added, tail);
+        System.arraycopy(styles, to, styles, from + added, tail);
+        System.arraycopy(materialized, to, materialized, from + added, tail);
+        System.arraycopy(tokens.kinds, 0, kinds, from, added);
+        System.arraycopy(tokens.starts, 0, starts, from, added);
+        System.arraycopy(tokens.ends, 0, ends, from, added);
+        System.arraycopy(tokens.lines, 0, lines, from, added);
+        System.arraycopy(tokens.cols, 0, cols, from, added);
+        System.arraycopy(tokens.messages, 0, messages, from, added);
+        System.arraycopy(tokens.styles, 0, styles, from, added);
+        System.arraycopy(tokens.materialized, 0, materialized, from, added);
+        //let go of what fell off the end
+        for (int i = newSize; i < size; i++){
+            messages[i] = styles[i] = null;
+            materialized[i] = null;
+        }
+        size = newSize;
+    }
+
+    /** Shifts the offsets of all tokens from the given index on
+     * @param from the index of the first token moved
+     * @param offsetShift the change in the offsets of the tokens
+     */
+    void shiftOffsets( int from, int offsetShift ){
+        for (int i = from; i < size; i++){
+            starts[i] += offsetShift;
+            ends[i] += offsetShift;
+        }
+    }
+
+    /** Shifts the line and column of the token at the given index
+     * @param index the index of the token
+     * @param lineShift the change in the line number of the token
+     * @param colShift the change in the column number of the token
+     */
+    void shiftPosition( int index, int lineShift, int colShift ){
+        if (lineShift == 0 && colShift == 0) return;
+        lines[index] += lineShift;
+        cols[index] += colShift;
+        materialized[index] = null;
+    }
+
+    /** Sets the text the tokens refer to
+     * @param text the new text
+     */
+    void setSource( CharSequence text ){source = text;}
+
+    /** Sets the index of the lines of the source
+     * @param index the index of the lines
+     */
+    void setLineIndex( LineIndex index ){lineIndex = index;}
+
+    /** Returns true if the token at the given index contains a line break
+     * @param index the index of the token
+     * @return true if the token spans more than one line
+     */
+    boolean containsLineBreak( int index ){
+        for (int i = starts[index]; i < ends[index]; i++)
+            if (source.charAt(i) == '\n') return true;
+        return false;
+    }
+
+    /** Grows the arrays to fit at least the given number of tokens
+     * @param capacity the number of tokens
+     */
+    private void grow( int capacity ){
+        capacity = Math.max(capacity, kinds.length * 2);
+        kinds = Arrays.copyOf(kinds, capacity);
+        starts = Arrays.copyOf(starts, capacity);
+        ends = Arrays.copyOf(ends, capacity);
+        lines = Arrays.copyOf(lines, capacity);
+        cols = Arrays.copyOf(cols, capacity);
+        messages = Arrays.copyOf(messages, capacity);
+        styles = Arrays.copyOf(styles, capacity);
+        materialized = Arrays.copyOf(materialized, capacity);
+    }
+
+    /** Checks that the index refers to a token in the buffer
+     * @param index the index of the token
+     * @return the index
+     */
+    private int check( int index ){
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Token " + index + " of " + size);
+        return index;
+    }
+
+}
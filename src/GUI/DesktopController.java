@@ -2,6 +2,7 @@ package GUI;
 
 import Compiler.Parser.CFG.ContextFreeGrammar;
 import GUI.Widget.DirectoryPanel;
+import GUI.Widget.SmartRichTextArea;
 import GUI.Window.GuiWindow;
 import GUI.Window.Utility.SettingsDialog;
 import GUI.Window.Utility.UtilWindow;
@@ -175,6 +176,7 @@ public class DesktopController {
                 window.closeTab();
             }
             preferences.saveDirectory(window.getCurrentDirectory());
+            SmartRichTextArea.saveParses();
             try{
                 //noinspection FinalizeCalledExplicitly
                 preferences.finalize();
@@ -1,7 +1,9 @@
 package GUI.Widget;
 
+import Compiler.Scanner.IncrementalScanner;
 import Compiler.Scanner.LexerToken;
-import Compiler.Scanner.Scanner;
+import Compiler.Scanner.LineIndex;
+import Compiler.Scanner.TokenBuffer;
 import Compiler.Visitor.VisitorToken;
 import GUI.Util.SearchToken;
 import Neuralizer.IO.NeuralLog;
@@ -51,6 +53,8 @@ public abstract class RichTextArea extends TextArea {
 
     //List of current tokens in file
     private final ArrayList<LexerToken> tokens;
+    //all tokens of the text, kept up to date edit by edit
+    private final IncrementalScanner scanner = new IncrementalScanner("");
 
     private final SimpleIntegerProperty numLines;
     private final SimpleIntegerProperty caret;
@@ -151,8 +155,8 @@ public abstract class RichTextArea extends TextArea {
         StringBuilder outputStream = new StringBuilder(input.length());
         int index, column, indexLag;
         index = column = 0;
-        Scanner scanner = new Scanner(input,true);
-        LexerToken token;
+        //only re-scans what changed since the last update
+        scanner.setText(input);
 
         //add header
         outputStream.append(getHtmlHeader());
@@ -167,19 +171,21 @@ public abstract class RichTextArea extends TextArea {
             getCaret().set(0);
         }
 
-        //loop the stream and modify for HTML formatting
-        while ( (token = scanner.getNextToken()).getIds() != LexerToken.TokenIds.EOF ){
+        //loop the stream and modify for HTML formatting; the buffer only creates
+        //LexerTokens for tokens that changed since the last update
+        TokenBuffer buffer = scanner.getBuffer();
+        for ( int t = 0; t < buffer.size(); t++ ){
             //grab next token, add to token list if appropriate
+            LexerToken token = buffer.get(t);
             if (token.getIds() != LexerToken.TokenIds.COMMENT && token.getIds()
                     != LexerToken.TokenIds.NULL )
                 getTokens().add(token);
-            String tokenString = token.getValue();
 
             indexLag = index;
             outputStream.append(getStartModifier(token,index));
 
-            for ( int r = 0; r < token.getValue().length(); r++ ){
-                char c = tokenString.charAt(r);
+            for ( int r = buffer.getStart(t); r < buffer.getEnd(t); r++ ){
+                char c = input.charAt(r);
                 boolean terminalChar = ( c == ' ' || c == '\n' || c == '\t' );
                 //validate individual words
                 if (terminalChar && oneSpace ){
@@ -216,8 +222,9 @@ public abstract class RichTextArea extends TextArea {
                 index++;
             }
 
-            /** Make an extra token to preserve immutability **/
-            LexerToken adjustedToken = LexerToken.duplicateWithCol(token,column);
+            /** Make an extra token to preserve immutability, if the column is off **/
+            LexerToken adjustedToken = token.getColNum() == column ? token :
+                    LexerToken.duplicateWithCol(token,column);
             /*start and end receive same index*/
             outputStream.append(getEndModifier(adjustedToken,indexLag));
         }
@@ -304,7 +311,7 @@ public abstract class RichTextArea extends TextArea {
                         "\n", "<br>");
         outputStream.getEngine().loadContent(inputStream);
 
-        getNumLines().set(getText().split("\n", -1).length);
+        getNumLines().set(getLineIndex().getLineCount());
     }
 
     /** The beginning sequence of a word modification for a given word. This class does
@@ -438,6 +445,12 @@ public abstract class RichTextArea extends TextArea {
         return tokens;
     }
 
+    /** Returns the index of the lines of the text as of the last update, for mapping
+     * between offsets and line/column positions
+     * @return the index of the lines of the text
+     */
+    protected final LineIndex getLineIndex() { return scanner.getLineIndex(); }
+
     /** Returns The number of lines in the area
      * @return the number of lines in the area
      */
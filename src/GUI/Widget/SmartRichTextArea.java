@@ -1,7 +1,5 @@
 package GUI.Widget;
 
-import Compiler.Parser.Builder.ASTBuilderTomita;
-import Compiler.Parser.Builder.ASTQuickBuilder;
 import Compiler.Parser.Builder.Builder;
 import Compiler.SemanticAnalyzer.ClassTree.ClassTree;
 import Compiler.SemanticAnalyzer.ClassTreeDecorator;
@@ -14,6 +12,8 @@ import Compiler.Parser.CFG.ContextFreeGrammar;
 import Compiler.Parser.LanguageSource.BantamGrammarSource;
 import Compiler.Parser.LanguageSource.JavaGrammar;
 import Compiler.Parser.Matcher.Matcher;
+import Compiler.Parser.Matcher.ParseCache;
+import Compiler.Parser.Matcher.SyntaxError;
 import Compiler.Parser.ParserTree.ParserTreeNode;
 import Compiler.Scanner.LexerToken;
 import Compiler.Visitor.Java7.RefactorVisitor;
@@ -30,6 +30,8 @@ import Neuralizer.Util.TreeFlattenVisitor;
 import Util.ThreadFactory;
 import javafx.scene.input.KeyCode;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.*;
 import java.util.stream.DoubleStream;
 
@@ -44,6 +46,12 @@ public final class SmartRichTextArea extends RichTextArea {
     private boolean isSaved,foundField,foundSearch;
     private ContextFreeGrammar grammar;
     private Builder lastBuilder;
+    //the last parse, reparsed after the next edit
+    private ASTBuilder lastParseBuilder;
+    private Matcher lastMatcher;
+    //the parses of all areas, so that an input parsed in one is not parsed again
+    private final static ParseCache parseCache = new ParseCache(16 << 20,
+            new File(ParseCache.getDirectory(), "editor.cache"));
     private String replaceText = "";
     private RawSyntaxTree lastTree = null;
 
@@ -264,11 +272,11 @@ public final class SmartRichTextArea extends RichTextArea {
     private final ClassTreeDecorator classTreeDecorator = new ClassTreeDecorator();
 
     /** Handles the Raw Tree
-     * @param buidler builder to assist in handling the tree
+     * @param head the head of the tree
      */
-    private void handleRawAST(Builder buidler){
+    private void handleRawAST(ParserTreeNode head){
         Class type = classMap.get(getGrammar());
-        lastTree = new RawSyntaxTree(buidler.getTreeHead(),type);
+        lastTree = new RawSyntaxTree(head,type);
         classTree = new ClassTree();
 
         classTreeDecorator.decorate(lastTree,classTree,grammar);
@@ -312,26 +320,47 @@ public final class SmartRichTextArea extends RichTextArea {
      */
     @Override
     public final void executeThreadServices() {
-        Builder builder = new ASTBuilder();
-        Matcher m = getGrammar().matches(
-                getTokens().toArray(new LexerToken[getTokens().size()]), builder);
+        LexerToken[] tokens = getTokens().toArray(new LexerToken[getTokens().size()]);
+        ParserTreeNode head;
+        List<SyntaxError> errors;
+        ParseCache.Result cached = parseCache.get(getGrammar(), tokens, true);
+        if (cached != null){
+            //the last parse is kept, the next edit is reparsed from it all the same
+            head = cached.getTreeHead();
+            errors = cached.getErrors();
+        }else {
+            ASTBuilder builder = lastParseBuilder == null ? new ASTBuilder() :
+                    new ASTBuilder(lastParseBuilder);
+            Matcher m = getGrammar().matches(tokens, builder, lastMatcher, true);
+            lastParseBuilder = builder;
+            lastMatcher = m;
+            parseCache.put(getGrammar(), tokens, m, builder.getTreeHead());
+            head = builder.getTreeHead();
+            errors = m.getErrors();
+            lastBuilder = builder; //primarily for testing
+        }
 //        builder.getTreeHead().print(0);
 //        NeuralLog.logMessage(builder.getTreeHead().size() + " IS THE SIZE ");
 
-        if (m.matches() && getOverflowValue() == -1) {
-            handleRawAST(builder);
-            lastBuilder = builder; //primarily for testing
-        } else if (!m.matches() && m.getBadToken() != null) {
-            getCatalog().add(new VisitorToken(m.getBadToken().getLineNum(),
-                    "Parser Error: Cannot resolve token \"" +
-                            m.getBadToken().getValue() + "\" on line " +
-                            m.getBadToken().getLineNum() + " in column "
-                            + m.getBadToken().getColNum()));
-        }
+        //syntax errors are recovered from, so the tree of the repaired input is analyzed
+        for (SyntaxError error : errors)
+            getCatalog().add(new VisitorToken(error.getLineNum(), error.getMessage()));
+        if (head != null && getOverflowValue() == -1) handleRawAST(head);
 
         markSubroutineComplete();
     }
 
+    /** Writes the parses of all areas to disk, so that they are not parsed again when
+     * the application is next started (see ParseCache)
+     */
+    public static void saveParses(){
+        try {
+            parseCache.save();
+        }catch (IOException e){
+            NeuralLog.logMessage("IO Err: unable to save parses (" + e.getMessage() + ")");
+        }
+    }
+
     @Override
     /** Highlights all matching phrases
      * @param token the token to search for
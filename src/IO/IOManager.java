@@ -5,6 +5,12 @@ package IO;
 import Neuralizer.IO.NeuralLog;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 
 /**
  * Author: Matt
@@ -45,28 +51,82 @@ public class IOManager {
      */
     public static String loadFile( File file ){
         BufferedReader reader = null;
-        String text = "";
+        StringBuilder text = new StringBuilder();
         String line;
         if (file != null){
             try{
                 reader = new BufferedReader(
                         new InputStreamReader( new FileInputStream(file),"UTF-8")
                 );
-                //not efficient string manipulation but shouldn't matter
-                while ((line = reader.readLine()) != null ){
-                    text += line+"\n";
-                }
-                try{
-                    text = text.substring(0,text.length()-1); //strip last \n
-                }catch(StringIndexOutOfBoundsException sieobe){ //shouldn't be caught
-                    NeuralLog.logMessage("Unexpected Loading Err:" + sieobe + ".\nMay indicate systemic problem.");
-                    NeuralLog.logError(sieobe,Thread.currentThread());
-                }
+                //lines are joined with \n, whatever they ended with
+                while ((line = reader.readLine()) != null )
+                    text.append(line).append('\n');
+                if (text.length() > 0) text.setLength(text.length() - 1); //strip last \n
             }catch(IOException e){ NeuralLog.logMessage("File Failed to Load "+file); }
-            finally{ try{reader.close();} catch(IOException e2){
+            finally{ try{if (reader != null) reader.close();} catch(IOException e2){
                 NeuralLog.logMessage("Err: File in use.");}
             }
         }
-        return text;
+        return text.toString();
+    }
+
+    /** Maps a file into memory and returns its text without copying it into a String,
+     * e.g. to hand a large file to the Scanner. An ASCII file is read straight from the
+     * mapped bytes; any other file is decoded as UTF-8 into a CharBuffer once. Unlike
+     * loadFile, the line breaks of the file are kept as they are.
+     * @param file The file to be loaded from
+     * @return the text of the file, or an empty text if it could not be loaded
+     */
+    public static CharSequence mapFile( File file ){
+        if (file == null) return "";
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)){
+            if (channel.size() > Integer.MAX_VALUE){
+                NeuralLog.logMessage("File Failed to Load "+file+": too large to map");
+                return "";
+            }
+            //the mapping stays valid after the channel is closed
+            MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            for (int i = 0; i < bytes.limit(); i++)
+                if (bytes.get(i) < 0)
+                    return StandardCharsets.UTF_8.newDecoder()
+                            .onMalformedInput(CodingErrorAction.REPLACE)
+                            .onUnmappableCharacter(CodingErrorAction.REPLACE)
+                            .decode(bytes);
+            return new AsciiText(bytes, 0, bytes.limit());
+        }catch(IOException e){
+            NeuralLog.logMessage("File Failed to Load "+file);
+            return "";
+        }
+    }
+
+    /** The text of an ASCII file, read char by char from its bytes **/
+    private static final class AsciiText implements CharSequence {
+        private final ByteBuffer bytes;
+        private final int start, length;
+
+        AsciiText( ByteBuffer bytes, int start, int length ){
+            this.bytes = bytes;
+            this.start = start;
+            this.length = length;
+        }
+
+        @Override public int length(){return length;}
+
+        @Override public char charAt( int index ){
+            if (index < 0 || index >= length) throw new IndexOutOfBoundsException("Index " + index);
+            return (char) bytes.get(start + index);
+        }
+
+        @Override public CharSequence subSequence( int from, int to ){
+            if (from < 0 || to > length || from > to)
+                throw new IndexOutOfBoundsException("Range " + from + "-" + to);
+            return new AsciiText(bytes, start + from, to - from);
+        }
+
+        @Override public String toString(){
+            byte[] text = new byte[length];
+            for (int i = 0; i < length; i++) text[i] = bytes.get(start + i);
+            return new String(text, StandardCharsets.US_ASCII);
+        }
     }
 }
@@ -2,12 +2,15 @@ package Neuralizer.IO;
 
 import Compiler.Nodes.ASTNodeTypeJava7;
 import Compiler.Parser.Builder.ASTBuilder;
+import Compiler.Parser.CFG.CFGToken;
 import Compiler.Parser.CFG.ContextFreeGrammar;
 import Compiler.Parser.LanguageSource.JavaGrammar;
+import Compiler.Parser.Matcher.CancellationToken;
 import Compiler.Parser.Matcher.Matcher;
+import Compiler.Parser.Matcher.ParseBudget;
+import Compiler.Parser.Matcher.ParseCache;
 import Compiler.Parser.ParserTree.ParserTreeNode;
-import Compiler.Scanner.LexerToken;
-import Compiler.Scanner.Scanner;
+import Compiler.Scanner.TokenBuffer;
 import Neuralizer.Network.NormalizeInput;
 import Neuralizer.Network.SelfOrganizingMap;
 import Neuralizer.Network.TrainSelfOrganizingMap;
@@ -23,6 +26,10 @@ import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Stack;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.DoubleStream;
 
 /**
@@ -42,7 +49,7 @@ public class NeuralIOTrainer {
     private int step = 0;
     private long lastTime;
     private final long startTime;
-    private boolean stop = false;
+    private volatile boolean stop = false;
 
     private final ArrayList<Matrix> trainingSet = new ArrayList<>();
     private final int NUM_ITERATIONS = 100;
@@ -50,6 +57,19 @@ public class NeuralIOTrainer {
 
     private PrintWriter output = null;
 
+    /* Parses run one at a time on a daemon thread, each held to a budget of wall time */
+    private static final long PARSE_MILLIS = 15000;
+    /* The token of the parse in flight, cancelled when the user stops */
+    private volatile CancellationToken parseToken = null;
+    private final ExecutorService parsers = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "NeuralIOTrainer Parser");
+        thread.setDaemon(true);
+        return thread;
+    });
+    /* Parses of the corpus, kept on disk so that a corpus run again is not parsed again */
+    private final ParseCache parseCache = new ParseCache(256 << 20,
+            new File(ParseCache.getDirectory(), "trainer.cache"));
+
     /** This is where we write out output to **/
     {
         try {
@@ -111,6 +131,14 @@ public class NeuralIOTrainer {
                     }
                 }
                 stop = true;
+                CancellationToken token = parseToken;
+                if (token != null) token.cancel();
+                parsers.shutdownNow();
+                try {
+                    parseCache.save();
+                } catch (IOException e) {
+                    NeuralLog.logMessage("IO Err: unable to save parses (" + e.getMessage() + ")");
+                }
                 report("Scanning Stopped By User");
                 if (output != null) {
                     NeuralLog.logMessage("Writing to file...");
@@ -213,67 +241,84 @@ public class NeuralIOTrainer {
             throws InterruptedException {
         if (stop) return;
         report("Scanning " + filename + " : (" + stringBuilder.length() + ")");
-        Scanner scanner = new Scanner(stringBuilder.toString(),false);
-        ArrayList<LexerToken> tokens = new ArrayList<>();
-        LexerToken token;
-
-        while ((token = scanner.getNextToken()).getIds() != LexerToken.TokenIds.EOF){
-            tokens.add(token);
-        }
-        ASTBuilder builder = new ASTBuilder();
-
-        report("Building (1) " + filename);
-        Matcher m;
-        Thread t1 = new Thread(()->{
-            threadedMatcherSubroutine(tokens, builder);
-        });
-        t1.start();
-        final long startTime = System.nanoTime();
-        while (t1.isAlive()){
-            if (System.nanoTime()-startTime > 15e9){
-                report("Thread Timeout: Aborted " + filename);
-                NeuralLog.logMessage("Thread Err: Aborted " + filename);
-                /* It's deprecated but I'm not going to get deadlock so not worried */
-                t1.stop();
+        TokenBuffer tokens = new TokenBuffer(stringBuilder.toString(),false);
+        CancellationToken token = new CancellationToken();
+        parseToken = token;
+        //a stop between the check above and here would miss the token
+        if (stop) token.cancel();
+        ParserTreeNode head;
+        ParseCache.Result cached = parseCache.get(grammar, tokens);
+        if (cached != null){
+            report("Cached " + filename);
+            head = cached.getTreeHead();
+        }else {
+            ASTBuilder builder = new ASTBuilder();
+
+            report("Building (1) " + filename);
+            Matcher matcher = await(parsers.submit(() -> grammar.matches(tokens, builder,
+                    new ParseBudget(PARSE_MILLIS, token))), token, filename);
+            if (matcher == null) return;
+            if (matcher.getAbortReason() != null){
+                report("Parse Budget: Aborted " + filename);
+                NeuralLog.logMessage("Parser Err: Aborted " + filename + " (" +
+                        matcher.getAbortReason() + ")");
+                return;
+            }
+            parseCache.put(grammar, tokens, matcher, builder.getTreeHead());
+            head = builder.getTreeHead();
+            if (head == null){
+                CFGToken badToken = matcher.getBadToken();
+                NeuralLog.logMessage("Parser Err: Failed to Match: " + filename + (badToken == null ?
+                        " at end of input" : " at token " + badToken.getValue() + " on line " +
+                        badToken.getLineNum() + " at column " + badToken.getColNum()));
                 return;
             }
-            Thread.sleep(100);
         }
 
         report("Matched " + filename);
-        if (builder.getTreeHead() != null){
-            report("Building (2) " + filename);
-
-            Thread t2 = new Thread(()->{buildNeurlizerTree(builder.getTreeHead(),ASTNodeTypeJava7.class);});
-            t2.start();
-            t2.join();
-            if (stop) return;
-
-            NeuralizerTree neuralizerTree = lastTree;
-            Matrix flat = neuralizerTree.flatten();
-
-            report("Parsed: " + step);
-            double averageScanTime = (double)(System.nanoTime() - this.startTime) / 10e8 / step;
-            NeuralLog.logMessage("Completed " + filename + " file #" + step +
-                    ". Average Processing time: " + averageScanTime);
-            trainingSet.add(flat);
-            step++;
-            if (step >= num_training_input) sflag.set(true);
-
-            report(flat.toString());
-        }else{
-            NeuralLog.logMessage("Parser Err: Failed to Match: "+filename + " at token "+
-                matcher.getBadToken().getValue() + " on line "+
-                    matcher.getBadToken().getLineNum() + " at column " +
-                    matcher.getBadToken().getColNum());
-        }
+        report("Building (2) " + filename);
+
+        lastTree = null;
+        await(parsers.submit(() ->
+                buildNeurlizerTree(head, ASTNodeTypeJava7.class)),
+                token, filename);
+        if (stop || lastTree == null) return;
+
+        NeuralizerTree neuralizerTree = lastTree;
+        Matrix flat = neuralizerTree.flatten();
+
+        report("Parsed: " + step);
+        double averageScanTime = (double)(System.nanoTime() - this.startTime) / 10e8 / step;
+        NeuralLog.logMessage("Completed " + filename + " file #" + step +
+                ". Average Processing time: " + averageScanTime);
+        trainingSet.add(flat);
+        step++;
+        if (step >= num_training_input) sflag.set(true);
+
+        report(flat.toString());
     }
 
-    private Matcher matcher;
-
-    private void threadedMatcherSubroutine(ArrayList<LexerToken> tokens, ASTBuilder builder) {
-        matcher = grammar.matches(
-                tokens.toArray(new LexerToken[tokens.size()]), builder);
+    /** Waits for a task submitted to the parser thread, cancelling it if the wait is
+     * interrupted
+     * @param task the task to wait for
+     * @param token the token cancelling the parse of the task
+     * @param filename the name of the file of the task
+     * @return the result of the task, or null if it failed
+     * @throws InterruptedException if the thread waiting is interrupted
+     */
+    private <T> T await(Future<T> task, CancellationToken token, String filename)
+            throws InterruptedException {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            token.cancel();
+            task.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            report("Err: " + e.getCause() + " in " + filename);
+            NeuralLog.logMessage("Thread Err: " + e.getCause() + " in " + filename);
+            return null;
+        }
     }
 
     NeuralizerTree lastTree = null;